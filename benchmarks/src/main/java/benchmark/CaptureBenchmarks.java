@@ -0,0 +1,140 @@
+package benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ui.CapturedFrame;
+import ui.FrameImageWriter;
+import ui.FrameMailbox;
+import ui.SpotLayout;
+
+/**
+ * What happens to every grabbed frame: converting it into the live feed
+ * image (CameraDriver.getWritableImage), and handing it from the capture
+ * thread to a consumer through the mailbox.
+ * <p>
+ * The conversion is timed at the usual camera resolutions, both the bulk
+ * way FrameImageWriter does it and the way getWritableImage used to: a new
+ * Java2DFrameConverter and BufferedImage per frame, then getRGB and
+ * setArgb for every pixel, a column at a time.
+ *
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CaptureBenchmarks {
+
+	/**
+	 * One made up frame of the lot, as ffmpeg hands it over in BGR and in
+	 * BGRA.
+	 */
+	@State(Scope.Thread)
+	public static class Conversion {
+		@Param({ "640x480", "1280x720", "1920x1080" })
+		public String resolution;
+
+		int width;
+		int height;
+		NullPixelWriter pw;
+		ByteBuffer bgr;
+		ByteBuffer bgra;
+		Frame frame;
+		final FrameImageWriter writer = new FrameImageWriter();
+
+		@Setup
+		public void setup() {
+			width = Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+			height = Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+			int pixels = width * height;
+			byte[] data = Workloads.lotFrames(SpotLayout.getSpotQuads(), width, height, 1, true)[0];
+			pw = new NullPixelWriter(width, height);
+			// ffmpeg hands frames over in direct buffers
+			bgr = ByteBuffer.allocateDirect(data.length);
+			bgr.put(data);
+			bgra = ByteBuffer.allocateDirect(pixels * 4);
+			for (int i = 0; i < pixels; i++) {
+				bgra.put(data[3 * i]).put(data[3 * i + 1]).put(data[3 * i + 2]).put((byte) 255);
+			}
+			frame = new Frame(width, height, Frame.DEPTH_UBYTE, 3);
+			ByteBuffer image = (ByteBuffer) frame.image[0];
+			for (int y = 0; y < height; y++) {
+				image.position(y * frame.imageStride);
+				image.put(data, y * width * 3, width * 3);
+			}
+			image.position(0);
+		}
+	}
+
+	/**
+	 * Frames of the real lot, recorded or made up, going through a mailbox.
+	 */
+	@State(Scope.Thread)
+	public static class Feed {
+		Workloads.RecordedFrames lot;
+		final FrameMailbox mailbox = new FrameMailbox();
+		long last = 0;
+
+		@Setup
+		public void setup() throws IOException {
+			lot = Workloads.cameraFrames();
+		}
+	}
+
+	@Benchmark
+	public long convertBgr(Conversion c) {
+		c.writer.write(c.bgr, c.width, c.height, 3, c.width * 3, c.pw);
+		return c.pw.written;
+	}
+
+	@Benchmark
+	public long convertBgra(Conversion c) {
+		c.writer.write(c.bgra, c.width, c.height, 4, c.width * 4, c.pw);
+		return c.pw.written;
+	}
+
+	@Benchmark
+	public long convertPerPixel(Conversion c) {
+		// the loop getWritableImage had before the bulk conversion
+		Java2DFrameConverter converter = new Java2DFrameConverter();
+		BufferedImage bf = converter.getBufferedImage(c.frame, 1);
+		for (int x = 0; x < bf.getWidth(); x++) {
+			for (int y = 0; y < bf.getHeight(); y++) {
+				c.pw.setArgb(x, y, bf.getRGB(x, y));
+			}
+		}
+		return c.pw.written;
+	}
+
+	@Benchmark
+	public long mailbox(Feed f) {
+		// what the capture thread and one consumer do with every frame
+		byte[] data = f.lot.frames[(int) (f.last % f.lot.frames.length)];
+		CapturedFrame frame = f.mailbox.obtain(data.length);
+		System.arraycopy(data, 0, frame.data, 0, data.length);
+		f.mailbox.publish(frame);
+		CapturedFrame got = f.mailbox.acquire(f.last);
+		f.last = got.sequence;
+		f.mailbox.release(got);
+		return f.last;
+	}
+
+}// end CaptureBenchmarks
@@ -0,0 +1,237 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH result files (-rf json) and lists the benchmarks that got
+ * worse, for catching regressions before they reach the kiosks. A benchmark
+ * only counts as worse when its confidence interval no longer overlaps the
+ * baseline's, so noise between runs doesn't fail the build, and when it got
+ * worse by more than a minimum amount, so tiny but real differences don't
+ * either. Exits with 1 if anything got worse.
+ * <p>
+ * Usage: java -cp benchmarks.jar benchmark.CompareResults baseline.json results.json [min change, 0.05]
+ *
+ * @version 1.0
+ */
+public class CompareResults {
+
+	/**
+	 * One benchmark's score from a result file.
+	 */
+	static class Score {
+		String mode;
+		double score;
+		double error;
+		String unit;
+	}
+
+	/**
+	 * Reads the primary score of every benchmark in a JMH result file.
+	 *
+	 * @param file
+	 *            a JMH json result file
+	 * @return the scores by benchmark name and parameters
+	 * @throws IOException
+	 *             if the file can't be read or isn't JMH json
+	 */
+	@SuppressWarnings("unchecked")
+	static Map<String, Score> read(String file) throws IOException {
+		String json = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+		Object parsed = new Json(json).value();
+		if (!(parsed instanceof List)) {
+			throw new IOException(file + " is not a JMH result file");
+		}
+		Map<String, Score> scores = new TreeMap<String, Score>();
+		for (Object o : (List<Object>) parsed) {
+			Map<String, Object> run = (Map<String, Object>) o;
+			Map<String, Object> metric = (Map<String, Object>) run.get("primaryMetric");
+			StringBuilder key = new StringBuilder((String) run.get("benchmark"));
+			Object params = run.get("params");
+			if (params instanceof Map) {
+				for (Map.Entry<String, Object> p : new TreeMap<String, Object>((Map<String, Object>) params).entrySet()) {
+					key.append(' ').append(p.getKey()).append('=').append(p.getValue());
+				}
+			}
+			Score s = new Score();
+			s.mode = (String) run.get("mode");
+			s.score = ((Number) metric.get("score")).doubleValue();
+			Object error = metric.get("scoreError");
+			// a single fork and iteration has no error, JMH writes "NaN" then
+			s.error = error instanceof Number ? ((Number) error).doubleValue() : 0;
+			s.unit = (String) metric.get("scoreUnit");
+			scores.put(key.toString(), s);
+		}
+		return scores;
+	}
+
+	/**
+	 * @return how much worse after is than before, as a fraction, or 0 if the
+	 *         difference is within the confidence intervals
+	 */
+	static double worse(Score before, Score after) {
+		// throughput is better when higher, everything else when lower
+		double sign = "thrpt".equals(after.mode) ? -1 : 1;
+		double change = sign * (after.score - before.score) / before.score;
+		boolean overlap = after.score - after.error <= before.score + before.error
+				&& before.score - before.error <= after.score + after.error;
+		return overlap ? 0 : change;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: java benchmark.CompareResults baseline.json results.json [min change]");
+			System.exit(2);
+		}
+		Map<String, Score> before = read(args[0]);
+		Map<String, Score> after = read(args[1]);
+		double minChange = args.length > 2 ? Double.parseDouble(args[2]) : 0.05;
+
+		int regressions = 0;
+		for (Map.Entry<String, Score> e : after.entrySet()) {
+			Score b = before.get(e.getKey());
+			if (b == null || !b.unit.equals(e.getValue().unit)) {
+				continue;
+			}
+			Score a = e.getValue();
+			double change = worse(b, a);
+			String line = String.format(Locale.ROOT, "%-70s %12.3f -> %12.3f %s", e.getKey(), b.score, a.score, a.unit);
+			if (change > minChange) {
+				regressions++;
+				System.out.println("REGRESSION " + line + String.format(Locale.ROOT, " (%.0f%% worse)", 100 * change));
+			} else {
+				System.out.println("ok         " + line);
+			}
+		}
+		if (regressions > 0) {
+			System.out.println(regressions + " benchmark(s) got worse");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Just enough of a JSON reader for JMH's result files: objects become
+	 * maps, arrays lists, numbers doubles.
+	 */
+	static class Json {
+		private final String s;
+		private int i = 0;
+
+		Json(String s) {
+			this.s = s;
+		}
+
+		Object value() throws IOException {
+			skipSpace();
+			if (i >= s.length()) {
+				throw new IOException("unexpected end of json");
+			}
+			char c = s.charAt(i);
+			if (c == '{') {
+				Map<String, Object> map = new LinkedHashMap<String, Object>();
+				i++;
+				skipSpace();
+				if (s.charAt(i) == '}') {
+					i++;
+					return map;
+				}
+				while (true) {
+					skipSpace();
+					String key = string();
+					skipSpace();
+					expect(':');
+					map.put(key, value());
+					skipSpace();
+					if (s.charAt(i++) == '}') {
+						return map;
+					}
+				}
+			}
+			if (c == '[') {
+				List<Object> list = new ArrayList<Object>();
+				i++;
+				skipSpace();
+				if (s.charAt(i) == ']') {
+					i++;
+					return list;
+				}
+				while (true) {
+					list.add(value());
+					skipSpace();
+					if (s.charAt(i++) == ']') {
+						return list;
+					}
+				}
+			}
+			if (c == '"') {
+				String str = string();
+				// JMH writes NaN and Infinity as strings
+				return str;
+			}
+			if (s.startsWith("true", i)) {
+				i += 4;
+				return Boolean.TRUE;
+			}
+			if (s.startsWith("false", i)) {
+				i += 5;
+				return Boolean.FALSE;
+			}
+			if (s.startsWith("null", i)) {
+				i += 4;
+				return null;
+			}
+			int start = i;
+			while (i < s.length() && "+-0123456789.eE".indexOf(s.charAt(i)) >= 0) {
+				i++;
+			}
+			if (start == i) {
+				throw new IOException("unexpected '" + c + "' in json at " + i);
+			}
+			return Double.valueOf(s.substring(start, i));
+		}
+
+		private String string() throws IOException {
+			expect('"');
+			StringBuilder b = new StringBuilder();
+			while (s.charAt(i) != '"') {
+				char c = s.charAt(i++);
+				if (c == '\\') {
+					char e = s.charAt(i++);
+					if (e == 'u') {
+						b.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+						i += 4;
+					} else {
+						b.append(e == 'n' ? '\n' : e == 't' ? '\t' : e == 'r' ? '\r' : e == 'b' ? '\b' : e == 'f' ? '\f' : e);
+					}
+				} else {
+					b.append(c);
+				}
+			}
+			i++;
+			return b.toString();
+		}
+
+		private void expect(char c) throws IOException {
+			if (s.charAt(i) != c) {
+				throw new IOException("expected '" + c + "' in json at " + i);
+			}
+			i++;
+		}
+
+		private void skipSpace() {
+			while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+				i++;
+			}
+		}
+	}
+
+}// end CompareResults
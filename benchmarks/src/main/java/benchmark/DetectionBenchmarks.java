@@ -0,0 +1,157 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ui.CapturedFrame;
+import ui.OccupancyDetector;
+import ui.SpotBitSet;
+import ui.SpotFilter;
+import ui.SpotLayout;
+
+/**
+ * Working out the spot states from a frame, with and without the change
+ * gate, spread over more and more cores for a 4K camera, and the filter
+ * that holds back flickers.
+ *
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DetectionBenchmarks {
+
+	/**
+	 * The detector over a cycle of frames of the real lot, once it has
+	 * calibrated.
+	 */
+	@State(Scope.Thread)
+	public static class Lot {
+		/** off, on, or on with a lot where nothing moves, the usual case at night */
+		@Param({ "off", "on", "still" })
+		public String gate;
+
+		OccupancyDetector detector;
+		CapturedFrame[] frames;
+		SpotBitSet spots;
+		int next = 0;
+
+		@Setup
+		public void setup() throws IOException {
+			int[][] quads = SpotLayout.getSpotQuads();
+			Workloads.RecordedFrames lot = Workloads.cameraFrames();
+			byte[][] data = gate.equals("still") ? Workloads.lotFrames(quads, lot.width, lot.height, 1, false)
+					: lot.frames;
+			frames = Workloads.capturedFrames(data, lot.width, lot.height);
+			detector = new OccupancyDetector(quads);
+			detector.setCalibrationFrames(1);
+			if (gate.equals("off")) {
+				detector.setChangeGate(0, 0, 1);
+			}
+			spots = new SpotBitSet(quads.length);
+			detector.process(frames[0], spots);
+		}
+	}
+
+	/**
+	 * A 4K camera over a big lot, where splitting the measuring up pays off,
+	 * with the gate off so every spot is measured every frame.
+	 */
+	@State(Scope.Thread)
+	public static class BigLot {
+		@Param({ "1", "2", "4", "8" })
+		public int threads;
+
+		OccupancyDetector detector;
+		CapturedFrame[] frames;
+		SpotBitSet spots;
+		ForkJoinPool pool;
+		int next = 0;
+
+		@Setup
+		public void setup() {
+			int width = 3840, height = 2160;
+			int[][] quads = Workloads.lotQuads(200, 20);
+			frames = Workloads.capturedFrames(Workloads.lotFrames(quads, width, height, 2, true), width, height);
+			detector = new OccupancyDetector(quads);
+			detector.setCalibrationFrames(1);
+			detector.setChangeGate(0, 0, 1);
+			// splitting is opt in; 1 thread is the default, unsplit path
+			if (threads > 1) {
+				pool = new ForkJoinPool(threads);
+				detector.setPool(pool);
+				detector.setParallelThreshold(200000);
+			}
+			spots = new SpotBitSet(quads.length);
+			detector.process(frames[0], spots);
+		}
+
+		@TearDown
+		public void teardown() {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * A 1000 spot lot with noisy scores, where a few spots move each frame
+	 * and most sit still.
+	 */
+	@State(Scope.Thread)
+	public static class Filter {
+		final SpotFilter filter = new SpotFilter(1000);
+		final SpotBitSet spots = new SpotBitSet(1000);
+		final double[] scores = new double[1000];
+		final Random random = new Random(1);
+
+		@Setup
+		public void setup() {
+			for (int k = 0; k < scores.length; k++) {
+				scores[k] = random.nextDouble() * 2;
+			}
+			filter.update(scores, spots);
+		}
+	}
+
+	@Benchmark
+	public int detect(Lot lot) {
+		lot.detector.process(lot.frames[lot.next], lot.spots);
+		lot.next = (lot.next + 1) % lot.frames.length;
+		return lot.spots.cardinality();
+	}
+
+	@Benchmark
+	public int detectBigLot(BigLot lot) {
+		lot.detector.process(lot.frames[lot.next], lot.spots);
+		lot.next = (lot.next + 1) % lot.frames.length;
+		return lot.spots.cardinality();
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public int filter(Filter f) {
+		for (int k = 0; k < 10; k++) {
+			f.scores[f.random.nextInt(f.scores.length)] = f.random.nextDouble() * 2;
+		}
+		return f.filter.update(f.scores, f.spots);
+	}
+
+}// end DetectionBenchmarks
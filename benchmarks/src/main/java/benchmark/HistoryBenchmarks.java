@@ -0,0 +1,108 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ui.HistoryHandler;
+import ui.SpotBitSet;
+
+/**
+ * The history: taking a sample, reading a day back, the percent series the
+ * charts show (a day's own and the usual one from the aggregates), and the
+ * old string form of the spots. Runs on a week of
+ * random samples from makeRandSpots3(), in a scratch directory that is
+ * deleted afterwards.
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HistoryBenchmarks {
+
+	private File dir;
+	private HistoryHandler hh;
+	private SpotBitSet spots;
+	private String str;
+	private final Random random = new Random(1);
+
+	@Setup
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("parking-bench").toFile();
+		hh = new HistoryHandler(dir);
+		SpotBitSet[][] week = hh.makeRandSpots3();
+		GregorianCalendar[] dates = new GregorianCalendar[week.length];
+		for (int i = 0; i < dates.length; i++) {
+			dates[i] = new GregorianCalendar();
+			dates[i].add(GregorianCalendar.DAY_OF_MONTH, i - (dates.length - 1));
+		}
+		hh.commitWeekData(week, dates);
+		spots = week[0][0];
+		str = hh.intMatToStr(hh.makeRandSpots2()[0]);
+	}
+
+	@TearDown
+	public void teardown() {
+		hh.close();
+		Workloads.delete(dir);
+	}
+
+	@Benchmark
+	public int append() {
+		spots.set(random.nextInt(spots.size()), random.nextBoolean());
+		hh.appendCurrentTime(spots);
+		return spots.cardinality();
+	}
+
+	@Benchmark
+	public int readDay() {
+		return hh.getDaysAgoRaw(1)[0].cardinality();
+	}
+
+	@Benchmark
+	public double percentsCached() {
+		return hh.getAllPercents()[7][0];
+	}
+
+	@Benchmark
+	public double percentsUncached() {
+		hh.clearCaches();
+		return hh.getAllPercents()[7][0];
+	}
+
+	@Benchmark
+	public int usualPercentsUncached() {
+		hh.clearCaches();
+		return hh.getUsualPercents(7)[0];
+	}
+
+	@Benchmark
+	public SpotBitSet strToSpots() {
+		return hh.strToIntMat(str);
+	}
+
+	@Benchmark
+	public String spotsToStr() {
+		return hh.intMatToStr(spots);
+	}
+
+}// end HistoryBenchmarks
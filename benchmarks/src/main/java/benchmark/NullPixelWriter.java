@@ -0,0 +1,79 @@
+package benchmark;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.paint.Color;
+
+/**
+ * A PixelWriter that copies what it is given into plain arrays, standing in
+ * for a WritableImage so conversion can be timed without a screen.
+ *
+ * @version 1.0
+ */
+class NullPixelWriter implements PixelWriter {
+
+	private final int width;
+	private final byte[] bytes;
+	private final int[] ints;
+	long written = 0;
+
+	NullPixelWriter(int width, int height) {
+		this.width = width;
+		bytes = new byte[width * height * 4];
+		ints = new int[width * height];
+	}
+
+	@Override
+	public PixelFormat<?> getPixelFormat() {
+		return PixelFormat.getByteBgraPreInstance();
+	}
+
+	@Override
+	public void setArgb(int x, int y, int argb) {
+		ints[y * width + x] = argb;
+		written++;
+	}
+
+	@Override
+	public void setColor(int x, int y, Color c) {
+		written++;
+	}
+
+	@Override
+	public <T extends Buffer> void setPixels(int x, int y, int w, int h, PixelFormat<T> pixelformat, T buffer,
+			int scanlineStride) {
+		if (buffer instanceof ByteBuffer) {
+			ByteBuffer b = ((ByteBuffer) buffer).duplicate();
+			b.get(bytes, 0, Math.min(bytes.length, b.remaining()));
+		} else if (buffer instanceof IntBuffer) {
+			IntBuffer b = ((IntBuffer) buffer).duplicate();
+			b.get(ints, 0, Math.min(ints.length, b.remaining()));
+		}
+		written += (long) w * h;
+	}
+
+	@Override
+	public void setPixels(int x, int y, int w, int h, PixelFormat<ByteBuffer> pixelformat, byte[] buffer, int offset,
+			int scanlineStride) {
+		System.arraycopy(buffer, offset, bytes, 0, Math.min(bytes.length, buffer.length - offset));
+		written += (long) w * h;
+	}
+
+	@Override
+	public void setPixels(int x, int y, int w, int h, PixelFormat<IntBuffer> pixelformat, int[] buffer, int offset,
+			int scanlineStride) {
+		System.arraycopy(buffer, offset, ints, 0, Math.min(ints.length, buffer.length - offset));
+		written += (long) w * h;
+	}
+
+	@Override
+	public void setPixels(int dstx, int dsty, int w, int h, PixelReader reader, int srcx, int srcy) {
+		written += (long) w * h;
+	}
+
+}// end NullPixelWriter
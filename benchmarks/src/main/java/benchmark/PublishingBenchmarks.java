@@ -0,0 +1,116 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ui.LatencyHistogram;
+import ui.OccupancyPublisher;
+import ui.SharedSpotReader;
+import ui.SharedSpotWriter;
+import ui.SpotBitSet;
+
+/**
+ * Getting the spot states to everyone else: the percentage the UI polls
+ * (ProcessingManager.getCurrentPercent), publishing a change, the spot file
+ * MATLAB writes, and recording a latency.
+ *
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PublishingBenchmarks {
+
+	private static final int SPOTS = 28;
+
+	/**
+	 * A publisher with the spots of the real lot, one of which is flipped
+	 * before every publish.
+	 */
+	@State(Scope.Thread)
+	public static class Published {
+		final OccupancyPublisher publisher = new OccupancyPublisher();
+		final SpotBitSet spots = Workloads.lotSpots(SPOTS, 1);
+		int next = 0;
+
+		@Setup
+		public void setup() {
+			publisher.publish(spots, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * A spot file with a writer and a reader on it.
+	 */
+	@State(Scope.Thread)
+	public static class SpotFile {
+		final SpotBitSet spots = new SpotBitSet(SPOTS);
+		File file;
+		SharedSpotWriter writer;
+		SharedSpotReader reader;
+		int next = 0;
+
+		@Setup
+		public void setup() throws IOException {
+			file = File.createTempFile("parking-bench", ".shm");
+			writer = new SharedSpotWriter(file, SPOTS);
+			reader = new SharedSpotReader(file);
+		}
+
+		@TearDown
+		public void teardown() throws IOException {
+			reader.close();
+			writer.close();
+			Workloads.delete(file);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Histogram {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		long value = 0;
+	}
+
+	@Benchmark
+	public int percent(Published p) {
+		return p.publisher.get().getPercentOpen();
+	}
+
+	@Benchmark
+	public long publish(Published p) {
+		p.spots.set(p.next, !p.spots.get(p.next));
+		p.next = (p.next + 1) % SPOTS;
+		return p.publisher.publish(p.spots, 0).getSequence();
+	}
+
+	@Benchmark
+	public long spotFileRoundtrip(SpotFile f) throws IOException {
+		f.spots.set(f.next, !f.spots.get(f.next));
+		f.next = (f.next + 1) % SPOTS;
+		f.writer.write(f.spots, 0);
+		f.reader.poll();
+		return f.reader.getSequence();
+	}
+
+	@Benchmark
+	public long recordLatency(Histogram h) {
+		h.histogram.record(h.value++ & 0xFFFFF);
+		return h.value;
+	}
+
+}// end PublishingBenchmarks
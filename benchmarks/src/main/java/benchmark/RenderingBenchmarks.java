@@ -0,0 +1,88 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ui.CanvasSpotOverlay;
+import ui.OccupancyDetector;
+import ui.PolygonSpotOverlay;
+import ui.SpotBitSet;
+import ui.SpotLayout;
+
+/**
+ * Switching the spot overlays between two lot states that differ in about a
+ * tenth of the spots, like a busy minute on the lot, for the real lot and
+ * made up ones up to the size of several campus garages, to see how the frame
+ * time grows with the number of spots. canvasSetup is what building the
+ * canvas overlay costs at startup, mostly finding each spot's neighbours.
+ * <p>
+ * The overlays are used off the FX thread here, which is fine as long as
+ * they aren't on screen. Without a pulse nothing ever draws the canvas, so
+ * its numbers are the cost of queueing the drawing, not of rasterizing it.
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RenderingBenchmarks {
+
+	@Param({ "28", "100", "400", "1000", "5000" })
+	public int spots;
+
+	private final SpotBitSet[] states = new SpotBitSet[2];
+	private PolygonSpotOverlay polygons;
+	private CanvasSpotOverlay canvas;
+	private int[][] quads;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		// about as many spots across as down the 800x500 layout, so even 5000
+		// spots are still a few pixels each
+		quads = spots == 28 ? SpotLayout.getSpotQuads()
+				: Workloads.lotQuads(spots, (int) Math.ceil(Math.sqrt(spots * 1.6)));
+		states[0] = Workloads.lotSpots(quads.length, 1);
+		states[1] = new SpotBitSet(quads.length);
+		states[1].copyFrom(states[0]);
+		for (int k = 0; k < quads.length; k += 10) {
+			states[1].set(k, !states[1].get(k));
+		}
+		polygons = new PolygonSpotOverlay(quads);
+		canvas = new CanvasSpotOverlay(quads, OccupancyDetector.LAYOUT_WIDTH, OccupancyDetector.LAYOUT_HEIGHT);
+		polygons.update(states[0]);
+		canvas.update(states[0]);
+	}
+
+	@Benchmark
+	public int polygon() {
+		next ^= 1;
+		return polygons.update(states[next]);
+	}
+
+	@Benchmark
+	public int canvas() {
+		next ^= 1;
+		return canvas.update(states[next]);
+	}
+
+	@Benchmark
+	public CanvasSpotOverlay canvasSetup() {
+		return new CanvasSpotOverlay(quads, OccupancyDetector.LAYOUT_WIDTH, OccupancyDetector.LAYOUT_HEIGHT);
+	}
+
+}// end RenderingBenchmarks
@@ -0,0 +1,289 @@
+package benchmark;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import ui.CapturedFrame;
+import ui.FrameMailbox;
+import ui.OccupancyDetector;
+import ui.SpotBitSet;
+import ui.SpotLayout;
+
+/**
+ * The data the benchmarks run on: a made up lot, frames of it with cars
+ * coming and going, and frames recorded from the real camera when there are
+ * some. Everything made up is seeded, so two runs see the same pixels.
+ *
+ * @version 1.0
+ */
+public class Workloads {
+
+	private static final long SEED = 20160218L;
+	/** names a directory of recorded frames to run on instead of made up ones */
+	public static final String FRAMES_PROPERTY = "benchmark.frames";
+	// the size frames are made up at when there are no recorded ones
+	private static final int FRAME_WIDTH = 1280;
+	private static final int FRAME_HEIGHT = 720;
+
+	/**
+	 * Gets the frames of the real lot that capture and detection are timed
+	 * on: the recorded ones in the directory named by -Dbenchmark.frames, or
+	 * 16 made up 1280x720 frames of the spots in SpotLayout.
+	 *
+	 * @return the frames, with their size
+	 * @throws IOException
+	 *             if recorded frames were asked for and can't be read
+	 */
+	public static RecordedFrames cameraFrames() throws IOException {
+		String dir = System.getProperty(FRAMES_PROPERTY);
+		if (dir != null) {
+			return loadFrames(new File(dir));
+		}
+		return new RecordedFrames(lotFrames(SpotLayout.getSpotQuads(), FRAME_WIDTH, FRAME_HEIGHT, 16, true),
+				FRAME_WIDTH, FRAME_HEIGHT);
+	}
+
+	/**
+	 * Lays out a lot of evenly spaced spots over the layout pane, in rows of
+	 * slightly slanted quads like the real lot.
+	 *
+	 * @param numSpots
+	 *            the number of spots
+	 * @param perRow
+	 *            the number of spots in a row
+	 * @return one {x0,y0,x1,y1,x2,y2,x3,y3} quad per spot, in layout
+	 *         coordinates
+	 */
+	public static int[][] lotQuads(int numSpots, int perRow) {
+		int rows = (numSpots + perRow - 1) / perRow;
+		int w = OccupancyDetector.LAYOUT_WIDTH / perRow;
+		int h = OccupancyDetector.LAYOUT_HEIGHT / rows;
+		// leave an aisle between the spots so they don't share pixels
+		int gap = Math.max(1, w / 10);
+		int slant = w / 6;
+		int[][] quads = new int[numSpots][];
+		for (int k = 0; k < numSpots; k++) {
+			int x = (k % perRow) * w;
+			int y = (k / perRow) * h;
+			quads[k] = new int[] { x + gap + slant, y + gap, x + w - gap, y + gap, x + w - gap - slant, y + h - gap,
+					x + gap, y + h - gap };
+		}
+		return quads;
+	}
+
+	/**
+	 * Makes up spot states with about two thirds of the spots open.
+	 *
+	 * @param numSpots
+	 *            the number of spots
+	 * @param seed
+	 *            which made up states
+	 * @return the states, set for open spots
+	 */
+	public static SpotBitSet lotSpots(int numSpots, long seed) {
+		Random random = new Random(SEED + seed);
+		SpotBitSet spots = new SpotBitSet(numSpots);
+		for (int k = 0; k < numSpots; k++) {
+			spots.set(k, random.nextInt(3) != 0);
+		}
+		return spots;
+	}
+
+	/**
+	 * Draws frames of the lot in 3 channel BGR. Between one frame and the next
+	 * a single car arrives or leaves, unless moving is false, in which case
+	 * every frame is the same.
+	 *
+	 * @param quads
+	 *            the spots, in layout coordinates
+	 * @param width
+	 *            the width of the frames
+	 * @param height
+	 *            the height of the frames
+	 * @param count
+	 *            the number of frames
+	 * @param moving
+	 *            whether cars come and go
+	 * @return the pixel data of every frame
+	 */
+	public static byte[][] lotFrames(int[][] quads, int width, int height, int count, boolean moving) {
+		Random random = new Random(SEED);
+		byte[] asphalt = new byte[width * height * 3];
+		for (int i = 0; i < asphalt.length; i += 3) {
+			int gray = 85 + random.nextInt(16);
+			asphalt[i] = (byte) gray;
+			asphalt[i + 1] = (byte) gray;
+			asphalt[i + 2] = (byte) (gray + 4);
+		}
+
+		SpotBitSet taken = new SpotBitSet(quads.length);
+		for (int k = 0; k < quads.length; k++) {
+			taken.set(k, random.nextInt(3) == 0);
+		}
+		byte[][] frames = new byte[count][];
+		for (int f = 0; f < count; f++) {
+			if (moving && f > 0) {
+				int k = random.nextInt(quads.length);
+				taken.set(k, !taken.get(k));
+			}
+			byte[] data = Arrays.copyOf(asphalt, asphalt.length);
+			for (int k = 0; k < quads.length; k++) {
+				if (taken.get(k)) {
+					drawCar(data, width, height, quads[k], k);
+				}
+			}
+			frames[f] = data;
+		}
+		return frames;
+	}
+
+	/**
+	 * Paints a striped block over the middle of a spot, busy enough to move
+	 * both the mean and the spread of the spot's pixels.
+	 */
+	private static void drawCar(byte[] data, int width, int height, int[] quad, int colour) {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int c = 0; c < 4; c++) {
+			minX = Math.min(minX, quad[2 * c]);
+			maxX = Math.max(maxX, quad[2 * c]);
+			minY = Math.min(minY, quad[2 * c + 1]);
+			maxY = Math.max(maxY, quad[2 * c + 1]);
+		}
+		int x0 = (minX + (maxX - minX) / 4) * width / OccupancyDetector.LAYOUT_WIDTH;
+		int x1 = (maxX - (maxX - minX) / 4) * width / OccupancyDetector.LAYOUT_WIDTH;
+		int y0 = (minY + (maxY - minY) / 6) * height / OccupancyDetector.LAYOUT_HEIGHT;
+		int y1 = (maxY - (maxY - minY) / 6) * height / OccupancyDetector.LAYOUT_HEIGHT;
+		int paint = 40 + (colour * 53) % 180;
+		for (int y = y0; y < y1; y++) {
+			int shade = ((y - y0) / 4) % 2 == 0 ? paint : 255 - paint;
+			for (int x = x0; x < x1; x++) {
+				int i = (y * width + x) * 3;
+				data[i] = (byte) shade;
+				data[i + 1] = (byte) (shade / 2);
+				data[i + 2] = (byte) (255 - shade);
+			}
+		}
+	}
+
+	/**
+	 * Loads recorded frames, in name order. Frames that aren't the size of the
+	 * first one are left out.
+	 *
+	 * @param dir
+	 *            a directory of png or jpg images
+	 * @return the pixel data of every frame in 3 channel BGR, with their size
+	 * @throws IOException
+	 *             if there are no images or one can't be read
+	 */
+	public static RecordedFrames loadFrames(File dir) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			throw new IOException(dir + " is not a directory");
+		}
+		Arrays.sort(files);
+		List<byte[]> frames = new ArrayList<byte[]>();
+		int width = -1, height = -1;
+		for (File file : files) {
+			String name = file.getName().toLowerCase();
+			if (!name.endsWith(".png") && !name.endsWith(".jpg") && !name.endsWith(".jpeg")) {
+				continue;
+			}
+			BufferedImage image = ImageIO.read(file);
+			if (image == null) {
+				throw new IOException(file + " could not be read");
+			}
+			if (width < 0) {
+				width = image.getWidth();
+				height = image.getHeight();
+			} else if (image.getWidth() != width || image.getHeight() != height) {
+				System.err.println("Warning: " + file + " is not " + width + "x" + height + ", left out");
+				continue;
+			}
+			BufferedImage bgr = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+			Graphics2D g = bgr.createGraphics();
+			g.drawImage(image, 0, 0, null);
+			g.dispose();
+			frames.add(((DataBufferByte) bgr.getRaster().getDataBuffer()).getData());
+		}
+		if (frames.isEmpty()) {
+			throw new IOException("there are no images in " + dir);
+		}
+		return new RecordedFrames(frames.toArray(new byte[frames.size()][]), width, height);
+	}
+
+	/**
+	 * Wraps pixel data in a frame the detector can take. The frames aren't
+	 * published anywhere, the mailbox is only used to make them.
+	 *
+	 * @param frames
+	 *            the pixel data, 3 channel BGR
+	 * @param width
+	 *            the width of the frames
+	 * @param height
+	 *            the height of the frames
+	 * @return one CapturedFrame per frame
+	 */
+	public static CapturedFrame[] capturedFrames(byte[][] frames, int width, int height) {
+		FrameMailbox mailbox = new FrameMailbox();
+		CapturedFrame[] captured = new CapturedFrame[frames.length];
+		for (int f = 0; f < frames.length; f++) {
+			CapturedFrame frame = mailbox.obtain(frames[f].length);
+			System.arraycopy(frames[f], 0, frame.data, 0, frames[f].length);
+			frame.width = width;
+			frame.height = height;
+			frame.channels = 3;
+			frame.stride = width * 3;
+			frame.originX = 0;
+			frame.originY = 0;
+			frame.sourceWidth = width;
+			frame.sourceHeight = height;
+			frame.sequence = f + 1;
+			frame.timestamp = System.currentTimeMillis();
+			captured[f] = frame;
+		}
+		return captured;
+	}
+
+	/**
+	 * Deletes a scratch file or directory and everything in it.
+	 *
+	 * @param file
+	 *            the file or directory
+	 */
+	public static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		if (!file.delete()) {
+			System.err.println("Warning: " + file + " could not be deleted");
+		}
+	}
+
+	/**
+	 * Frames of the lot, all the same size.
+	 */
+	public static class RecordedFrames {
+		public final byte[][] frames;
+		public final int width;
+		public final int height;
+
+		RecordedFrames(byte[][] frames, int width, int height) {
+			this.frames = frames;
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+}// end Workloads
@@ -11,20 +11,19 @@ public class MatlabIf  extends Application {
 	private ProcessingManager pm;
 	public DisplayUI ui;
 	
-	//The object that Matlab will share with java
-	public volatile boolean[] sharedData;
-	
 	public MatlabIf() {
-		pm = new ProcessingManager(20,false, sharedData);
+		//the spots come from Matlab through updateSpots, so the processor starts without any
+		pm = new ProcessingManager(20,false, null);
 		
 		//begin the two main object threads
 		pm.beginProcThread();
 		launch();
 	}
 	
-	public void updateSpots(boolean[] spots){sharedData=spots;}
+	//the array is copied into an immutable snapshot straight away, so Matlab may reuse it
+	public void updateSpots(boolean[] spots){pm.publishSpots(spots);}
 	
-	public boolean[] getSpots(){return sharedData;}
+	public boolean[] getSpots(){return pm.getCurrentSpots();}
 
 
 	/**
@@ -1,121 +1,208 @@
 package ui;
 
-import org.bytedeco.javacpp.avutil;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintStream;
-
-import javax.imageio.ImageIO;
-
-import org.bytedeco.javacv.FFmpegFrameGrabber;
 import org.bytedeco.javacv.Frame;
-import org.bytedeco.javacv.FrameGrabber;
-import org.bytedeco.javacv.Java2DFrameConverter;
-import org.bytedeco.javacv.FrameGrabber.Exception;
 
+import javafx.application.Platform;
+import javafx.scene.image.ImageView;
 import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
-import javafx.scene.layout.Background;
-import javafx.scene.layout.BackgroundImage;
-import javafx.scene.layout.BackgroundPosition;
-import javafx.scene.layout.BackgroundRepeat;
-import javafx.scene.layout.BackgroundSize;
 
 /**
- * Class responsible for access of the video feed
+ * Class responsible for access of the video feed. Capture itself happens in
+ * FrameCapture; this adds the live feed that the UI shows.
  * 
  * @author Austin Musser
  * @version 2.0
  */
 @SuppressWarnings("all")
-public class CameraDriver {
+public class CameraDriver extends FrameCapture {
 
-	private Frame lotFrame;
-	private FrameGrabber frameGrabber;
-	private int sampleRate = 10;
-	private WritableImage bkg;
 	Frame framesrc;
-	Java2DFrameConverter paintConverter;
-	BufferedImage bf;
+	long lastShownSequence = 0;
+	FrameImageWriter imageWriter = new FrameImageWriter();
 	WritableImage wr;
 	PixelWriter pw;
 
-	public CameraDriver() {
+	//the live feed cycles through a few preallocated images so nothing is allocated per frame.
+	//One is on screen, one may be waiting for the FX thread, and the other one gets written to.
+	private static final int POOL_SIZE = 3;
+	private final WritableImage[] pool = new WritableImage[POOL_SIZE];
+	private final PixelWriter[] poolWriters = new PixelWriter[POOL_SIZE];
+	//the image waiting for the FX thread, -1 if none. Both sides swap it, so an image is taken exactly once.
+	private final AtomicInteger pendingIndex = new AtomicInteger(-1);
+	//written to by the capture side only: the image it last handed over, and the one the FX thread took before that
+	private int publishedIndex = -1;
+	private int takenIndex = -1;
+	private volatile boolean swapQueued = false;
+	//getWritableImage alternates between these, so the image it returned last time is left alone
+	private final WritableImage[] returned = new WritableImage[2];
+	private int nextReturned = 0;
+	private volatile ImageView liveFeed;
+	private static final LatencyHistogram convertTime = Metrics.histogram("camera.convert");
 
-		
-		// create a grabber object to extract frames from this camera
-		frameGrabber = new FFmpegFrameGrabber("http://construction1.db.erau.edu/mjpg/video.mjpg");
-		frameGrabber.setSampleRate(20);
-		
-		try {
-			frameGrabber.start();
-		} catch (Exception e) {
-			//if we can't access the video feed, attempt to replace it with a solid black image
-			frameGrabber = new FFmpegFrameGrabber("src/media/blackImage.png");
-			try {
-				frameGrabber.start();
-			} catch (Exception e1) {
-				//if we can't access the backup image, just print an error
-				System.err.println("No internet and no black image...");
+	//Runnable that puts the most recently written pool image on screen. Must run on the FX thread.
+	private final Runnable scheduledFeedSwap = new Runnable() {
+		@Override
+		public void run() {
+			swapQueued = false;
+			int i = pendingIndex.getAndSet(-1);
+			if (i >= 0 && liveFeed != null) {
+				liveFeed.setImage(pool[i]);
 			}
 		}
+	};
+
+	public CameraDriver() {
+		this(DEFAULT_URL, FEED_WIDTH, FEED_HEIGHT);
 	}
 
 	/**
-	 * Attempts to grab the next frame of the input video feed/file.
+	 * Constructs a driver for the default camera whose frames are scaled by ffmpeg while decoding.
 	 * 
-	 * @return lotFrame the next frame of the acquired video feed/file
+	 * @param width the width of the frames handed out, 0 for the camera's own width
+	 * @param height the height of the frames handed out, 0 for the camera's own height
 	 */
+	public CameraDriver(int width, int height) {
+		this(DEFAULT_URL, width, height);
+	}
 
-	public Frame getImage() {
-
-		try {
-			lotFrame = frameGrabber.grab();
-		} catch (Exception e) {
-			e.printStackTrace();
-		}finally{
-
-		}
-		return lotFrame;
+	/**
+	 * Constructs a driver for any feed ffmpeg can open, such as an MJPEG url or a
+	 * local video file, whose frames are scaled by ffmpeg while decoding.
+	 * 
+	 * @param url where the feed comes from
+	 * @param width the width of the frames handed out, 0 for the camera's own width
+	 * @param height the height of the frames handed out, 0 for the camera's own height
+	 */
+	public CameraDriver(String url, int width, int height) {
+		super(url, width, height);
 	}
-	
+
 	/**
-	 * Converts a grabbed frame to a writable image that can be used as a background by JavaFX
+	 * Converts the newest frame to a writable image that can be used as a background by JavaFX.
+	 * The images are reused: the one returned is only written to again two calls later.
 	 * @return a WritableImage that can be posted to the UI
 	 */
-	public WritableImage getWritableImage() {
-		framesrc = getImage();
-		paintConverter = new Java2DFrameConverter();
-		bf = paintConverter.getBufferedImage(framesrc, 1);
+	public synchronized WritableImage getWritableImage() {
 		wr = null;
+		long start = System.nanoTime();
 
-		if (bf != null) {
-			wr = new WritableImage(bf.getWidth(), bf.getHeight());
-			pw = wr.getPixelWriter();
-			for (int x = 0; x < bf.getWidth(); x++) {
-				for (int y = 0; y < bf.getHeight(); y++) {
-					pw.setArgb(x, y, bf.getRGB(x, y));
+		if (isCapturing()) {
+			//the grabber belongs to the capture thread, so use what it published
+			FrameMailbox mailbox = getMailbox();
+			CapturedFrame frame = mailbox.acquire(0);
+			if (frame != null) {
+				try {
+					WritableImage img = nextReturnedImage(frame.width, frame.height);
+					if (imageWriter.write(frame.buffer, frame.width, frame.height, frame.channels, frame.stride,
+							pw)) {
+						wr = img;
+						convertTime.recordSince(start);
+					}
+				} finally {
+					mailbox.release(frame);
 				}
 			}
+			return wr;
+		}
+
+		framesrc = getImage();
+		if (framesrc != null && framesrc.image != null) {
+			WritableImage img = nextReturnedImage(framesrc.imageWidth, framesrc.imageHeight);
+			//copies the whole frame at once instead of one pixel at a time
+			if (imageWriter.write(framesrc, pw)) {
+				wr = img;
+			}
+			convertTime.recordSince(start);
 		}
 		return wr;
 	}
+
+	/**
+	 * Picks the image getWritableImage writes to next and points pw at it, (re)allocating
+	 * it only when the frame size changes.
+	 */
+	private WritableImage nextReturnedImage(int width, int height) {
+		WritableImage img = returned[nextReturned];
+		if (img == null || (int) img.getWidth() != width || (int) img.getHeight() != height) {
+			img = new WritableImage(width, height);
+			returned[nextReturned] = img;
+		}
+		nextReturned ^= 1;
+		pw = img.getPixelWriter();
+		return img;
+	}
 	
+	/**
+	 * Sets the view that the live feed is drawn into.
+	 * 
+	 * @param view an ImageView on the UI that stretches over the lot pane
+	 */
+	public void setLiveFeedView(ImageView view) {
+		liveFeed = view;
+	}
+
 	/*
-	 * gets a writable image and posts it to the UI
+	 * takes the newest captured frame, writes it into a free pool image and asks the FX thread to show it.
+	 * Never touches the scene graph itself and never blocks on the camera.
 	 */
 	public synchronized void updateUILiveFeed(){
-		bkg = getWritableImage();
-		try{
-			RiddleRunAroundParking.ui.pane.setBackground(
-					new Background(new BackgroundImage(bkg, BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT,
-							BackgroundPosition.DEFAULT, new BackgroundSize(100, 100, true, true, true, true))));
-		}catch(NullPointerException e){
-			System.out.println("laggy internet");
+		if (liveFeed == null) {
+			return;
+		}
+		FrameMailbox mailbox = getMailbox();
+		CapturedFrame frame = mailbox.acquire(lastShownSequence);
+		if (frame == null) {
+			//nothing new since the last update
+			return;
+		}
+
+		try {
+			lastShownSequence = frame.sequence;
+			long start = System.nanoTime();
+			int i = nextPoolIndex(frame.width, frame.height);
+			if (imageWriter.write(frame.buffer, frame.width, frame.height, frame.channels, frame.stride,
+					poolWriters[i])) {
+				convertTime.recordSince(start);
+				//if the image handed over last time is no longer waiting, the FX thread took it and it may be on screen
+				if (pendingIndex.getAndSet(i) < 0) {
+					takenIndex = publishedIndex;
+				}
+				publishedIndex = i;
+				//only one swap needs to be waiting on the FX thread at a time, it always shows the newest image
+				if (!swapQueued) {
+					swapQueued = true;
+					Platform.runLater(scheduledFeedSwap);
+				}
+			}
+		} finally {
+			mailbox.release(frame);
+		}
+	}
+
+	/**
+	 * Picks a pool image that is neither on screen nor waiting to be, (re)allocating
+	 * the pool only when the frame size changes. The one handed over last may be
+	 * either, and the one the FX thread took before that may still be on screen;
+	 * any other image is free.
+	 * 
+	 * @param width the width of the incoming frame
+	 * @param height the height of the incoming frame
+	 * @return the index of a pool image that is safe to write to
+	 */
+	private int nextPoolIndex(int width, int height) {
+		int free = 0;
+		while (free == publishedIndex || free == takenIndex) {
+			free++;
+		}
+		WritableImage img = pool[free];
+		if (img == null || (int) img.getWidth() != width || (int) img.getHeight() != height) {
+			pool[free] = new WritableImage(width, height);
+			poolWriters[free] = pool[free].getPixelWriter();
 		}
+		return free;
 	}
 
 }// end CameraDriver
@@ -0,0 +1,150 @@
+package ui;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * One camera to ingest: where its feed comes from, where its spots are and
+ * how often it should be looked at. Cameras are listed in a properties file
+ * like
+ *
+ * <pre>
+ * cameras=lotA,lotB
+ * lotA.url=http://construction1.db.erau.edu/mjpg/video.mjpg
+ * lotA.rate=2
+ * lotA.spots=200 224 190 255 219 258 227 225; 227 225 219 258 260 260 262 228
+ * lotB.url=media/lotB.mp4
+ * </pre>
+ *
+ * where every spot is the four corners x0 y0 x1 y1 x2 y2 x3 y3 of a quad in
+ * 800x500 lot pane coordinates, spots are separated by semicolons, and rate is
+ * in frames per second (1 if left out). The url can be anything ffmpeg opens,
+ * so local files or a local MJPEG server stand in for the real cameras.
+ *
+ * @version 1.0
+ */
+public final class CameraSource {
+
+	private final String id;
+	private final String url;
+	private final int[][] quads;
+	private final double frequency;
+
+	/**
+	 * @param id
+	 *            the name of the camera in the registry
+	 * @param url
+	 *            where the feed comes from
+	 * @param quads
+	 *            one {x0,y0,x1,y1,x2,y2,x3,y3} quad per spot
+	 * @param frequency
+	 *            frames to analyse per second. The feed itself is read as
+	 *            fast as it comes, and frames in between are skipped
+	 */
+	public CameraSource(String id, String url, int[][] quads, double frequency) {
+		if (frequency <= 0) {
+			throw new IllegalArgumentException("the rate of camera " + id + " must be above 0");
+		}
+		this.id = id;
+		this.url = url;
+		this.quads = quads;
+		this.frequency = frequency;
+	}
+
+	/**
+	 * Reads a list of cameras.
+	 *
+	 * @param configFile
+	 *            a properties file as described above
+	 * @return the cameras, in the order they are listed
+	 * @throws IOException
+	 *             if the file can't be read or a camera is missing its url or
+	 *             spots
+	 */
+	public static List<CameraSource> load(File configFile) throws IOException {
+		Properties props = new Properties();
+		InputStream in = new FileInputStream(configFile);
+		try {
+			props.load(in);
+		} finally {
+			in.close();
+		}
+
+		List<CameraSource> sources = new ArrayList<CameraSource>();
+		for (String id : props.getProperty("cameras", "").split(",")) {
+			id = id.trim();
+			if (id.isEmpty()) {
+				continue;
+			}
+			String url = props.getProperty(id + ".url");
+			String spots = props.getProperty(id + ".spots");
+			if (url == null || spots == null) {
+				throw new IOException("camera " + id + " needs both a url and spots in " + configFile);
+			}
+			try {
+				double rate = Double.parseDouble(props.getProperty(id + ".rate", "1"));
+				sources.add(new CameraSource(id, url.trim(), parseQuads(spots), rate));
+			} catch (IllegalArgumentException e) {
+				throw new IOException("camera " + id + " is set up wrong in " + configFile + ": " + e.getMessage(), e);
+			}
+		}
+		return sources;
+	}
+
+	/**
+	 * Reads spots written as eight numbers each, separated by semicolons.
+	 */
+	static int[][] parseQuads(String spots) {
+		List<int[]> quads = new ArrayList<int[]>();
+		for (String spot : spots.split(";")) {
+			spot = spot.trim();
+			if (spot.isEmpty()) {
+				continue;
+			}
+			String[] numbers = spot.split("[\\s,]+");
+			if (numbers.length != 8) {
+				throw new IllegalArgumentException("a spot needs 8 numbers, not " + numbers.length + ": " + spot);
+			}
+			int[] quad = new int[8];
+			for (int c = 0; c < 8; c++) {
+				quad[c] = Integer.parseInt(numbers[c]);
+			}
+			quads.add(quad);
+		}
+		return quads.toArray(new int[quads.size()][]);
+	}
+
+	/**
+	 * @return the name of the camera in the registry
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return where the feed comes from
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return one {x0,y0,x1,y1,x2,y2,x3,y3} quad per spot
+	 */
+	public int[][] getQuads() {
+		return quads;
+	}
+
+	/**
+	 * @return frames to analyse per second
+	 */
+	public double getFrequency() {
+		return frequency;
+	}
+
+}// end CameraSource
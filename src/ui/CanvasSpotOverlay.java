@@ -0,0 +1,191 @@
+package ui;
+
+import java.util.Arrays;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * The highlighted spots drawn onto a single Canvas instead of one node per
+ * spot, for lots with so many spots that the scene graph gets in the way.
+ * Each update only clears and repaints the rectangles around the spots that
+ * changed, plus whichever highlighted neighbours overlap those rectangles.
+ * Must only be used on the FX thread.
+ *
+ * @version 1.0
+ */
+public class CanvasSpotOverlay implements SpotOverlay {
+
+	private final Canvas canvas;
+	private final GraphicsContext gc;
+	private final int numSpots;
+	private final double[][] xs;
+	private final double[][] ys;
+	// {x, y, width, height} around every spot, a pixel wider for the antialiased edge
+	private final double[][] bounds;
+	// the spots whose bounds overlap each spot's bounds, itself included
+	private final int[][] neighbours;
+	// what is on screen right now
+	private final SpotBitSet shown;
+
+	/**
+	 * @param quads
+	 *            one {x0,y0,x1,y1,x2,y2,x3,y3} quad per spot, as from
+	 *            SpotLayout.getSpotQuads()
+	 * @param width
+	 *            the width of the lot pane
+	 * @param height
+	 *            the height of the lot pane
+	 */
+	public CanvasSpotOverlay(int[][] quads, double width, double height) {
+		canvas = new Canvas(width, height);
+		canvas.setMouseTransparent(true);
+		canvas.setManaged(false);
+		gc = canvas.getGraphicsContext2D();
+		gc.setFill(Color.YELLOW);
+
+		numSpots = quads.length;
+		shown = new SpotBitSet(numSpots);
+		xs = new double[numSpots][4];
+		ys = new double[numSpots][4];
+		bounds = new double[numSpots][];
+		for (int i = 0; i < numSpots; i++) {
+			double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for (int c = 0; c < 4; c++) {
+				xs[i][c] = quads[i][2 * c];
+				ys[i][c] = quads[i][2 * c + 1];
+				minX = Math.min(minX, xs[i][c]);
+				maxX = Math.max(maxX, xs[i][c]);
+				minY = Math.min(minY, ys[i][c]);
+				maxY = Math.max(maxY, ys[i][c]);
+			}
+			bounds[i] = new double[] { minX - 1, minY - 1, maxX - minX + 2, maxY - minY + 2 };
+		}
+
+		neighbours = findNeighbours(bounds);
+	}
+
+	/**
+	 * Works out which spots overlap each spot. The spots are first sorted
+	 * into a grid of cells as big as the biggest spot, so each spot only has
+	 * to be checked against the few spots in the cells it touches instead of
+	 * against every spot in the lot.
+	 *
+	 * @param bounds
+	 *            {x, y, width, height} of every spot
+	 * @return the spots whose bounds overlap each spot's bounds, itself included
+	 */
+	static int[][] findNeighbours(double[][] bounds) {
+		int n = bounds.length;
+		int[][] found = new int[n][];
+		if (n == 0) {
+			return found;
+		}
+		double cell = 1;
+		double originX = Double.MAX_VALUE, originY = Double.MAX_VALUE, endX = -Double.MAX_VALUE, endY = -Double.MAX_VALUE;
+		for (double[] b : bounds) {
+			cell = Math.max(cell, Math.max(b[2], b[3]));
+			originX = Math.min(originX, b[0]);
+			originY = Math.min(originY, b[1]);
+			endX = Math.max(endX, b[0] + b[2]);
+			endY = Math.max(endY, b[1] + b[3]);
+		}
+		int cols = (int) ((endX - originX) / cell) + 1;
+		int rows = (int) ((endY - originY) / cell) + 1;
+
+		// a spot goes into the cell its top left corner is in; as no spot is
+		// bigger than a cell, the spots overlapping it are in that cell or one
+		// of the eight around it
+		int[] cellStart = new int[cols * rows + 1];
+		int[] cellOf = new int[n];
+		for (int i = 0; i < n; i++) {
+			cellOf[i] = (int) ((bounds[i][1] - originY) / cell) * cols + (int) ((bounds[i][0] - originX) / cell);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < cols * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		int[] cellSpots = new int[n];
+		int[] fill = new int[cols * rows];
+		for (int i = 0; i < n; i++) {
+			cellSpots[cellStart[cellOf[i]] + fill[cellOf[i]]++] = i;
+		}
+
+		int[] near = new int[16];
+		for (int i = 0; i < n; i++) {
+			int count = 0;
+			int col = cellOf[i] % cols;
+			int row = cellOf[i] / cols;
+			for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+				for (int c = Math.max(0, col - 1); c <= Math.min(cols - 1, col + 1); c++) {
+					int cellIndex = r * cols + c;
+					for (int k = cellStart[cellIndex]; k < cellStart[cellIndex + 1]; k++) {
+						int j = cellSpots[k];
+						if (overlaps(bounds[i], bounds[j])) {
+							if (count == near.length) {
+								near = Arrays.copyOf(near, count * 2);
+							}
+							near[count++] = j;
+						}
+					}
+				}
+			}
+			found[i] = Arrays.copyOf(near, count);
+			// keep them in spot order, like the drawing order of the polygon overlay
+			Arrays.sort(found[i]);
+		}
+		return found;
+	}
+
+	@Override
+	public Canvas getNode() {
+		return canvas;
+	}
+
+	@Override
+	public int update(SpotBitSet spots) {
+		int changed = 0;
+		int words = Math.min(spots.wordCount(), shown.wordCount());
+
+		// first wipe the area around every spot that changed...
+		for (int w = 0; w < words; w++) {
+			long diff = spots.getWord(w) ^ shown.getWord(w);
+			while (diff != 0) {
+				int i = (w << 6) + Long.numberOfTrailingZeros(diff);
+				diff &= diff - 1;
+				if (i < numSpots) {
+					double[] b = bounds[i];
+					gc.clearRect(b[0], b[1], b[2], b[3]);
+					changed++;
+				}
+			}
+		}
+		if (changed == 0) {
+			return 0;
+		}
+
+		// ...then repaint every highlighted spot that the wiping may have cut into
+		for (int w = 0; w < words; w++) {
+			long diff = spots.getWord(w) ^ shown.getWord(w);
+			while (diff != 0) {
+				int i = (w << 6) + Long.numberOfTrailingZeros(diff);
+				diff &= diff - 1;
+				if (i < numSpots) {
+					for (int n : neighbours[i]) {
+						if (spots.get(n)) {
+							gc.fillPolygon(xs[n], ys[n], 4);
+						}
+					}
+				}
+			}
+		}
+		shown.copyFrom(spots);
+		return changed;
+	}
+
+	private static boolean overlaps(double[] a, double[] b) {
+		return a[0] < b[0] + b[2] && b[0] < a[0] + a[2] && a[1] < b[1] + b[3] && b[1] < a[1] + a[3];
+	}
+
+}// end CanvasSpotOverlay
@@ -0,0 +1,60 @@
+package ui;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A copy of one grabbed video frame, owned by a FrameMailbox. The pixel
+ * buffer is reused once every holder has released the frame, so consumers
+ * must not keep a reference after calling FrameMailbox.release.
+ *
+ * @version 1.0
+ */
+public class CapturedFrame {
+
+	/** packed pixel data, rows are exactly width*channels bytes apart */
+	public final byte[] data;
+	/** a wrapper around data for APIs that want a buffer */
+	public final ByteBuffer buffer;
+	public int width;
+	public int height;
+	public int channels;
+	public int stride;
+	/** where the top left pixel of data sits in the full frame, non-zero if the frame was cropped */
+	public int originX;
+	public int originY;
+	/** the size of the full frame before cropping */
+	public int sourceWidth;
+	public int sourceHeight;
+	/** increases by one with every published frame */
+	public long sequence;
+	/** the wall clock time (ms) the frame was grabbed */
+	public long timestamp;
+
+	// 0 means the frame is free for the grabber to overwrite
+	final AtomicInteger refs = new AtomicInteger();
+	volatile boolean taken;
+
+	CapturedFrame(int capacity) {
+		data = new byte[capacity];
+		buffer = ByteBuffer.wrap(data);
+	}
+
+	/**
+	 * Adds a holder, but only if the frame is still published or held by
+	 * someone else. A frame that is being recycled cannot be retained.
+	 *
+	 * @return true if the caller now holds the frame
+	 */
+	boolean tryRetain() {
+		int r;
+		do {
+			r = refs.get();
+			if (r <= 0) {
+				return false;
+			}
+		} while (!refs.compareAndSet(r, r + 1));
+		return true;
+	}
+
+}// end CapturedFrame
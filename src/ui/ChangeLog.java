@@ -0,0 +1,540 @@
+package ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only binary log of spot changes, one file per day, fed by a
+ * SpotChangeStream. Each day starts with a keyframe of the whole lot, after
+ * which a spot flipping costs a type byte and three varints, usually 4 to 7
+ * bytes, instead of a whole record of every spot. A keyframe is repeated now
+ * and then so a day can be read back from the middle. Writes are forced to
+ * disk in batches like OccupancyLog.
+ *
+ * <pre>
+ * segment file:  int magic, int version, then records
+ * keyframe:      byte 'K', long sequence, long timeMillis, int numSpots, long[ceil(numSpots/64)] open bits
+ * change:        byte 'T' (now taken) or 'O' (now open), varint time delta, varint sequence delta, varint spot
+ * </pre>
+ *
+ * Deltas are from the record before, zigzag encoded so the odd clock step
+ * backwards still fits. Set bits are open spots, as in SpotBitSet.
+ *
+ * @version 1.0
+ */
+public class ChangeLog implements SpotChangeListener {
+
+	private static final int MAGIC = 0x43484731; // "CHG1"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 8;
+	private static final String SUFFIX = ".chg";
+	private static final byte KEYFRAME = 'K';
+	private static final byte TAKEN = 'T';
+	private static final byte OPEN = 'O';
+
+	private static final int QUEUE_SIZE = 8192;
+	private static final LongAdder dropped = Metrics.counter("changelog.dropped");
+
+	/**
+	 * A change or keyframe waiting for the writer, or a request to force or
+	 * close the log, which the writer answers through done.
+	 */
+	private static final class Pending {
+		long sequence;
+		long timestamp;
+		int spot;
+		boolean open;
+		OccupancySnapshot snapshot;
+		CountDownLatch done;
+		boolean closing;
+		IOException error;
+	}
+
+	private final File dir;
+	private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<Pending>(QUEUE_SIZE);
+	private final Thread writer;
+	private volatile boolean closed = false;
+	private final DateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+	private final Calendar cal = Calendar.getInstance();
+
+	// the segment currently being appended to
+	private RandomAccessFile segmentFile;
+	private FileChannel segment;
+	private long segmentDayStart = -1;
+	private long segmentDayEnd = -1;
+	private ByteBuffer record = ByteBuffer.allocate(64);
+
+	// the lot as the log last wrote it, so a new day can start with a keyframe
+	private SpotBitSet state;
+	private long lastSequence;
+	private long lastTime;
+	private long lastKeyframe = Long.MIN_VALUE;
+	private long keyframeMillis = 60 * 60 * 1000;
+
+	// records written since the last force, and when that was. Only the writer touches these
+	private int unsynced = 0;
+	private long lastSync = 0;
+	private volatile int syncEvery = 16;
+	private volatile long syncIntervalMillis = 5000;
+
+	/**
+	 * @param dir
+	 *            the folder that holds the day segments, created if needed
+	 */
+	public ChangeLog(File dir) {
+		this.dir = dir;
+		dir.mkdirs();
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {writeQueued();}
+		}, "changelog-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public void spotChanged(long sequence, long timestamp, int spot, boolean open) {
+		Pending p = new Pending();
+		p.sequence = sequence;
+		p.timestamp = timestamp;
+		p.spot = spot;
+		p.open = open;
+		enqueue(p);
+	}
+
+	@Override
+	public void keyframe(OccupancySnapshot snapshot) {
+		Pending p = new Pending();
+		p.snapshot = snapshot;
+		enqueue(p);
+	}
+
+	/**
+	 * Hands a record to the writer without ever waiting for it.
+	 */
+	private void enqueue(Pending p) {
+		if (!closed && !queue.offer(p)) {
+			dropped.increment();
+		}
+	}
+
+	/**
+	 * The body of the writer thread. Writes whatever has queued up, then
+	 * forces the whole batch at once if enough records or time have gone by.
+	 * While records are waiting to be forced, it wakes up in time to force
+	 * them even if nothing else comes in.
+	 */
+	private void writeQueued() {
+		while (true) {
+			Pending p;
+			try {
+				if (unsynced == 0) {
+					p = queue.take();
+				} else {
+					long wait = syncIntervalMillis - (System.currentTimeMillis() - lastSync);
+					p = queue.poll(Math.max(1, wait), TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				return;
+			}
+			synchronized (this) {
+				for (; p != null; p = queue.poll()) {
+					if (p.done != null) {
+						try {
+							sync();
+							if (p.closing) {
+								closeSegment();
+							}
+						} catch (IOException e) {
+							p.error = e;
+						}
+						p.done.countDown();
+						if (p.closing) {
+							return;
+						}
+					} else if (p.snapshot != null) {
+						writeKeyframe(p.snapshot);
+					} else {
+						writeChange(p.sequence, p.timestamp, p.spot, p.open);
+					}
+				}
+				if (unsynced >= syncEvery || System.currentTimeMillis() - lastSync >= syncIntervalMillis) {
+					try {
+						sync();
+					} catch (IOException e) {
+						System.err.println("Error: the change log could not be forced to disk");
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+	private void writeChange(long sequence, long timestamp, int spot, boolean open) {
+		if (state == null || spot >= state.size()) {
+			// nothing to change yet, the stream sends a keyframe first
+			return;
+		}
+		try {
+			if (segment == null || timestamp < segmentDayStart || timestamp >= segmentDayEnd) {
+				openSegment(timestamp);
+				writeKeyframe(lastSequence, timestamp);
+			}
+			record.clear();
+			record.put(open ? OPEN : TAKEN);
+			putVarLong(record, zigzag(timestamp - lastTime));
+			putVarLong(record, zigzag(sequence - lastSequence));
+			putVarLong(record, spot);
+			record.flip();
+			write();
+			state.set(spot, open);
+			lastSequence = sequence;
+			lastTime = timestamp;
+		} catch (IOException e) {
+			System.err.println("Error: the change log could not be written");
+			e.printStackTrace();
+		}
+	}
+
+	private void writeKeyframe(OccupancySnapshot snapshot) {
+		long timestamp = snapshot.getTimestamp();
+		boolean same = state != null && state.size() == snapshot.getNumSpots();
+		for (int w = 0; same && w < snapshot.wordCount(); w++) {
+			same = state.getWord(w) == snapshot.getWord(w);
+		}
+		if (!same) {
+			state = snapshot.toSpotBitSet();
+		}
+		try {
+			boolean newDay = segment == null || timestamp < segmentDayStart || timestamp >= segmentDayEnd;
+			if (newDay) {
+				openSegment(timestamp);
+			}
+			// a keyframe that only repeats what the changes already say is
+			// written once in a while, not every time the stream sends one
+			if (newDay || !same || timestamp - lastKeyframe >= keyframeMillis) {
+				writeKeyframe(snapshot.getSequence(), timestamp);
+			}
+		} catch (IOException e) {
+			System.err.println("Error: the change log could not be written");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes the whole lot as it stands.
+	 */
+	private void writeKeyframe(long sequence, long timestamp) throws IOException {
+		int words = state.wordCount();
+		int bytes = 1 + 8 + 8 + 4 + 8 * words;
+		if (record.capacity() < bytes) {
+			record = ByteBuffer.allocate(bytes);
+		}
+		record.clear();
+		record.put(KEYFRAME).putLong(sequence).putLong(timestamp).putInt(state.size());
+		for (int w = 0; w < words; w++) {
+			record.putLong(state.getWord(w));
+		}
+		record.flip();
+		write();
+		lastSequence = sequence;
+		lastTime = timestamp;
+		lastKeyframe = timestamp;
+	}
+
+	/**
+	 * Writes the prepared record. The writer forces it to disk with the rest
+	 * of its batch.
+	 */
+	private void write() throws IOException {
+		while (record.hasRemaining()) {
+			segment.write(record);
+		}
+		unsynced++;
+	}
+
+	/**
+	 * Forces the records written since the last force to disk.
+	 */
+	private void sync() throws IOException {
+		if (segment != null && unsynced > 0) {
+			segment.force(false);
+		}
+		unsynced = 0;
+		lastSync = System.currentTimeMillis();
+	}
+
+	/**
+	 * Closes the current segment and opens (or creates) the one for the day
+	 * that timeMillis falls in. The caller writes a keyframe next.
+	 */
+	private void openSegment(long timeMillis) throws IOException {
+		closeSegment();
+
+		cal.setTimeInMillis(timeMillis);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		segmentDayStart = cal.getTimeInMillis();
+		cal.add(Calendar.DAY_OF_MONTH, 1);
+		segmentDayEnd = cal.getTimeInMillis();
+
+		File f = new File(dir, dayFormat.format(new Date(segmentDayStart)) + SUFFIX);
+		segmentFile = new RandomAccessFile(f, "rw");
+		segment = segmentFile.getChannel();
+		long whole;
+		if (segment.size() < HEADER_BYTES) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			segment.write(header, 0);
+			whole = HEADER_BYTES;
+		} else {
+			// drop a record that was only half written when the program last died
+			whole = HEADER_BYTES + parse(readAll(segment), null);
+		}
+		segment.truncate(whole);
+		segment.position(whole);
+	}
+
+	/**
+	 * Waits for the writer to write everything queued so far and force it to
+	 * disk.
+	 *
+	 * @throws IOException
+	 *             if the segment can't be forced
+	 */
+	public void flush() throws IOException {
+		request(false);
+	}
+
+	/**
+	 * Writes and forces everything queued so far, closes the current segment
+	 * and stops the writer. Changes that come in afterwards are ignored.
+	 *
+	 * @throws IOException
+	 *             if the segment can't be closed
+	 */
+	public void close() throws IOException {
+		request(true);
+	}
+
+	/**
+	 * Queues a force, or a close, behind the records already waiting and
+	 * waits for the writer to get to it.
+	 */
+	private void request(boolean closing) throws IOException {
+		Pending p = new Pending();
+		p.done = new CountDownLatch(1);
+		p.closing = closing;
+		synchronized (queue) {
+			// only one request may close, and none may queue up behind it
+			if (closed) {
+				return;
+			}
+			closed = closing;
+			try {
+				queue.put(p);
+				while (!p.done.await(1, TimeUnit.SECONDS)) {
+					if (!writer.isAlive()) {
+						throw new IOException("the change log writer has stopped");
+					}
+				}
+			} catch (InterruptedException e) {
+				throw new IOException("interrupted while waiting for the change log writer", e);
+			}
+		}
+		if (p.error != null) {
+			throw p.error;
+		}
+	}
+
+	private void closeSegment() throws IOException {
+		if (segment != null) {
+			sync();
+			segmentFile.close();
+			segment = null;
+			segmentFile = null;
+		}
+	}
+
+	/**
+	 * Sets how often appended records are forced to disk. Whichever limit is
+	 * reached first triggers the force.
+	 *
+	 * @param records
+	 *            the most records that may be waiting
+	 * @param millis
+	 *            the longest a record may be waiting
+	 */
+	public void setSyncBatch(int records, long millis) {
+		syncEvery = Math.max(1, records);
+		syncIntervalMillis = millis;
+	}
+
+	/**
+	 * Sets how far apart the keyframes within a day are. Keyframes are also
+	 * written at the start of each day and whenever the lot doesn't match
+	 * what the changes said.
+	 *
+	 * @param millis
+	 *            the longest stretch of changes without a keyframe
+	 */
+	public synchronized void setKeyframeInterval(long millis) {
+		keyframeMillis = millis;
+	}
+
+	/**
+	 * @return the day segments on disk, oldest first
+	 */
+	public File[] getSegments() {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return new File[0];
+		}
+		List<File> segments = new ArrayList<File>();
+		for (File f : files) {
+			if (f.getName().endsWith(SUFFIX)) {
+				segments.add(f);
+			}
+		}
+		File[] sorted = segments.toArray(new File[segments.size()]);
+		// yyyy-MM-dd names sort by date
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Plays one day segment back into a listener, keyframes and changes in
+	 * the order they were written.
+	 *
+	 * @param segmentFile
+	 *            a file from getSegments()
+	 * @param listener
+	 *            receives the records
+	 * @throws IOException
+	 *             if the segment can't be read
+	 */
+	public void readSegment(File segmentFile, SpotChangeListener listener) throws IOException {
+		flush();
+		RandomAccessFile raf = new RandomAccessFile(segmentFile, "r");
+		try {
+			parse(readAll(raf.getChannel()), listener);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Checks the header and reads the records of a segment into a buffer.
+	 */
+	private static ByteBuffer readAll(FileChannel ch) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		ch.read(header, 0);
+		header.flip();
+		if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != VERSION) {
+			throw new IOException("change log segment has a different format");
+		}
+		ByteBuffer buf = ByteBuffer.allocate((int) (ch.size() - HEADER_BYTES));
+		int n = 0;
+		while (buf.hasRemaining() && n >= 0) {
+			n = ch.read(buf, HEADER_BYTES + buf.position());
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/**
+	 * Walks the records in buf, handing each to the listener if there is one.
+	 *
+	 * @return the number of bytes taken up by whole records
+	 */
+	private static int parse(ByteBuffer buf, SpotChangeListener listener) {
+		int whole = 0;
+		long sequence = 0;
+		long time = 0;
+		int numSpots = 0;
+		try {
+			while (buf.hasRemaining()) {
+				byte type = buf.get();
+				if (type == KEYFRAME) {
+					sequence = buf.getLong();
+					time = buf.getLong();
+					numSpots = buf.getInt();
+					if (numSpots < 0) {
+						break;
+					}
+					SpotBitSet spots = new SpotBitSet(numSpots);
+					for (int w = 0; w < spots.wordCount(); w++) {
+						spots.setWord(w, buf.getLong());
+					}
+					if (listener != null) {
+						listener.keyframe(OccupancySnapshot.of(sequence, time, spots));
+					}
+				} else if (type == OPEN || type == TAKEN) {
+					time += unzigzag(getVarLong(buf));
+					sequence += unzigzag(getVarLong(buf));
+					long spot = getVarLong(buf);
+					if (spot >= numSpots) {
+						break;
+					}
+					if (listener != null) {
+						listener.spotChanged(sequence, time, (int) spot, type == OPEN);
+					}
+				} else {
+					// not a record, so whatever follows can't be trusted either
+					break;
+				}
+				whole = buf.position();
+			}
+		} catch (BufferUnderflowException e) {
+			// the last record was cut short
+		}
+		return whole;
+	}
+
+	private static long zigzag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	private static long unzigzag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private static void putVarLong(ByteBuffer buf, long v) {
+		while ((v & ~0x7FL) != 0) {
+			buf.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buf.put((byte) v);
+	}
+
+	private static long getVarLong(ByteBuffer buf) {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buf.get();
+			v |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return v;
+			}
+		}
+		throw new BufferUnderflowException();
+	}
+
+}// end ChangeLog
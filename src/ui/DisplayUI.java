@@ -5,7 +5,6 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Vector;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -19,6 +18,7 @@ import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
 import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BackgroundFill;
 import javafx.scene.layout.BorderPane;
@@ -29,7 +29,6 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.ImagePattern;
-import javafx.scene.shape.Polygon;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
@@ -58,14 +57,22 @@ public class DisplayUI extends Pane{
 	Menu menuAbout;
 	MenuItem myAbout;
 	Pane pane = new Pane();
+	ImageView liveFeed = new ImageView();
 	Rectangle rectangle;
 	Label parkingPercent = new Label("Default Text");
 	Label timeText = new Label();
 	Calendar cal;
 	ProcessingManager pm;
 	HistoryHandler history;
-	private int count = 0;
-	Vector<Polygon> polyVec = new Vector<Polygon>();
+	SpotOverlay spotOverlay;
+	//the snapshot on screen, and the set it is unpacked into for the overlay
+	private long paintedSequence = -1;
+	private SpotBitSet spotStates;
+	//time spent on the FX thread
+	private static final LatencyHistogram paintTime = Metrics.histogram("ui.spots.paint");
+	private static final LatencyHistogram infoTime = Metrics.histogram("ui.info.update");
+	// start with -Dparking.overlay=canvas to draw the spots on one canvas instead of a polygon each
+	private static final String overlayProperty = "parking.overlay";
 	private static final String erauURL = "media/erau.jpg";
 	SimpleDateFormat timeForm = new SimpleDateFormat("HH:mm:ss");
 	
@@ -153,7 +160,9 @@ public class DisplayUI extends Pane{
 			series.getData().add(new XYChart.Data(timeOfDay[i], percentFull[i]));
 		}
 
+		series.setName("That day");
 		lineChart.getData().add(series);
+		lineChart.getData().add(usualSeries(7));
 
 		return lineChart;
 	}
@@ -177,7 +186,9 @@ public class DisplayUI extends Pane{
 			series.getData().add(new XYChart.Data(timeOfDay[i], percentFull[i]));
 		}
 
+		series.setName("That day");
 		lineChart.getData().add(series);
+		lineChart.getData().add(usualSeries(8));
 		return lineChart;
 	}
 
@@ -199,10 +210,29 @@ public class DisplayUI extends Pane{
 			series.getData().add(new XYChart.Data(timeOfDay[i], percentFull[i]));
 		}
 
+		series.setName("That day");
 		lineChart.getData().add(series);
+		lineChart.getData().add(usualSeries(6));
 		return lineChart;
 	}
 
+	/**
+	 * Makes a chart series of how full the lot usually is on the same day of
+	 * the week as a day in the past, to compare that day against.
+	 * 
+	 * @param numDaysAgo number of days in the past
+	 * @return the series, one point per time of day
+	 */
+	private XYChart.Series usualSeries(int numDaysAgo) {
+		int[] usual = history.getUsualPercents(numDaysAgo);
+		XYChart.Series series = new XYChart.Series<>();
+		series.setName("Usual");
+		for (int i = 0; i < 28; i++) {
+			series.getData().add(new XYChart.Data(timeOfDay[i], usual[i]));
+		}
+		return series;
+	}
+
 	public LineChart generateDummyGraph(){
 
 		final CategoryAxis xAxis = new CategoryAxis();
@@ -410,7 +440,11 @@ public VBox addTop(){
 
 		// creates a new pane that will display the parking lot with highlighted
 		// spots
-		pane.getChildren().add(r);
+		// the live camera feed sits underneath everything else and stretches over the whole pane
+		liveFeed.fitWidthProperty().bind(pane.widthProperty());
+		liveFeed.fitHeightProperty().bind(pane.heightProperty());
+		liveFeed.setManaged(false);
+		pane.getChildren().addAll(liveFeed, r);
 		pane.setMinSize(800, 500);
 
 		// sets pane to the center of border pane
@@ -435,12 +469,14 @@ public VBox addTop(){
 	 * @param percentFull an integer that represents the current percentage full state of the lot
 	 */
 	public synchronized void updateUIPercent(int percentFull){
+		long start = System.nanoTime();
 		//Update UI with cool stuff
 		parkingPercent.setText(String.format(percentFull + "%% of the spots in this lot are currently empty."));
 
 		// get current date time with Calendar
 		cal = Calendar.getInstance();
 		timeText.setText(String.format("Time: " + timeForm.format(cal.getTime())));
+		infoTime.recordSince(start);
 	}
 
 	/**
@@ -455,75 +491,28 @@ public VBox addTop(){
 	 * paints the newest spot states to the UI
 	 */
 	public synchronized void lineColor(){
-		int[][] lines = pm.getSpotMatrix();
-		boolean[] spotStates = pm.getCurrentSpots();
-		if (count == 0){
-			count = 1;
-			for (int i = 0;  i <= 3; i++) {
-				Polygon temp = new Polygon(new double[]{
-						(double) lines[i][0],(double) lines[i][1],(double) lines[i][2],(double) lines[i][3],
-						(double) lines[i+1][2],(double) lines[i+1][3],(double) lines[i+1][0],(double) lines[i+1][1]
-				});
-				if ((spotStates[i]) ) {
-					temp.setFill(Color.YELLOW);
-				} else {
-					temp.setFill(null);
-				}
-				polyVec.addElement(temp);
-				pane.getChildren().add(polyVec.elementAt(i)); 
-			}
-			for (int i = 5;  i <= 10; i++) {
-				Polygon temp = new Polygon(new double[]{
-						(double) lines[i][0],(double) lines[i][1],(double) lines[i][2],(double) lines[i][3],
-						(double) lines[i+1][2],(double) lines[i+1][3],(double) lines[i+1][0],(double) lines[i+1][1]
-				});
-				if ((spotStates[i-1]) ) {
-					temp.setFill(Color.YELLOW);
-				} else {
-					temp.setFill(null);
-				}
-				polyVec.addElement(temp);
-				pane.getChildren().add(polyVec.elementAt(i-1)); 
-			}
-			for (int i = 12;  i <= 24; i++) {
-
-				Polygon temp = new Polygon(new double[]{
-						(double) lines[i][0],(double) lines[i][1],(double) lines[i][2],(double) lines[i][3],
-						(double) lines[i+1][2],(double) lines[i+1][3],(double) lines[i+1][0],(double) lines[i+1][1]
-				});
-
-				if ((spotStates[i-2]) ) {
-					temp.setFill(Color.YELLOW);
-				} else {
-					temp.setFill(null);
-				}
-				polyVec.addElement(temp);
-				pane.getChildren().add(polyVec.elementAt(i-2)); 
-			}
-			for (int i = 26;  i <= 30; i++) {
-				Polygon temp = new Polygon(new double[]{
-						(double) lines[i][0],(double) lines[i][1],(double) lines[i][2],(double) lines[i][3],
-						(double) lines[i+1][2],(double) lines[i+1][3],(double) lines[i+1][0],(double) lines[i+1][1]
-				});
-				if ((spotStates[i-3]) ) {
-					temp.setFill(Color.YELLOW);
-
-				} else {
-					temp.setFill(null);
-				}
-				polyVec.addElement(temp);
-				pane.getChildren().add(polyVec.elementAt(i-3)); 
+		OccupancySnapshot snapshot = pm.getSnapshot();
+		//nothing to do if no spot changed since the last paint
+		if (snapshot == null || snapshot.getSequence() == paintedSequence) {
+			return;
+		}
+		long start = System.nanoTime();
+		if (spotOverlay == null) {
+			//the overlay is only built once, afterwards only spots that changed get repainted
+			if ("canvas".equalsIgnoreCase(System.getProperty(overlayProperty))) {
+				spotOverlay = new CanvasSpotOverlay(pm.getSpotQuads(), OccupancyDetector.LAYOUT_WIDTH, OccupancyDetector.LAYOUT_HEIGHT);
+			} else {
+				spotOverlay = new PolygonSpotOverlay(pm.getSpotQuads());
 			}
-		} else {
-			for (int i = 0;  i <= 27; i++) {
-
-				if ((spotStates[i]) ) {
-					polyVec.elementAt(i).setFill(Color.YELLOW);
-				} else {
-					polyVec.elementAt(i).setFill(null);
-				}
-			} 
+			pane.getChildren().add(spotOverlay.getNode());
+		}
+		if (spotStates == null || spotStates.size() != snapshot.getNumSpots()) {
+			spotStates = new SpotBitSet(snapshot.getNumSpots());
 		}
+		snapshot.copyTo(spotStates);
+		spotOverlay.update(spotStates);
+		paintedSequence = snapshot.getSequence();
+		paintTime.recordSince(start);
 	}
 
 }
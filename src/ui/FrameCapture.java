@@ -0,0 +1,334 @@
+package ui;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bytedeco.javacpp.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.FrameGrabber.Exception;
+
+/**
+ * Grabs frames from a video feed and hands copies of them out through a
+ * FrameMailbox. This is the part of the camera access that analysis needs,
+ * and it uses no JavaFX at all, so it also runs on a box without a screen.
+ * CameraDriver adds the live feed for the UI on top of it.
+ * <p>
+ * The feed is opened on the first grab rather than in the constructor, so
+ * making a capture never waits on the network.
+ * <p>
+ * How many bytes the analysis region keeps from being copied, and how long a
+ * copy takes, is kept per capture (getBytesSavedPerFrame and friends) and
+ * for all captures together as the "camera.copy.*" metrics.
+ *
+ * @version 1.0
+ */
+public class FrameCapture {
+
+	/** the size of the lot pane, which is also the size frames are decoded to by default */
+	public static final int FEED_WIDTH = 800;
+	public static final int FEED_HEIGHT = 500;
+	/** the campus construction camera that the app shows by default */
+	public static final String DEFAULT_URL = "http://construction1.db.erau.edu/mjpg/video.mjpg";
+
+	private final String url;
+	private final int width;
+	private final int height;
+	private FrameGrabber frameGrabber;
+	private Frame lotFrame;
+
+	//the capture thread owns the grabber and hands frames to everyone else through the mailbox
+	private final FrameMailbox mailbox = new FrameMailbox();
+	private volatile boolean capturing = false;
+	private Thread captureThread;
+
+	//the part of the frame that analysis cares about, in lot pane coordinates. When cropping
+	//is on, only this part is copied out of the grabber.
+	private volatile int[] region;
+	private volatile boolean cropToRegion = false;
+	//written by the capture thread only. The same counts for every capture together are in Metrics
+	private volatile long framesCopied = 0;
+	private volatile long bytesCopied = 0;
+	private volatile long bytesSaved = 0;
+	private volatile long copyNanos = 0;
+	private static final LatencyHistogram grabTime = Metrics.histogram("camera.grab");
+	private static final LatencyHistogram copyTime = Metrics.histogram("camera.copy");
+	private static final LongAdder grabErrors = Metrics.counter("camera.grab.errors");
+	private static final LongAdder copiedFrames = Metrics.counter("camera.copy.frames");
+	private static final LongAdder copiedBytes = Metrics.counter("camera.copy.bytes");
+	private static final LongAdder savedBytes = Metrics.counter("camera.copy.bytes_saved");
+	private final Runnable captureLoop = new Runnable() {
+		@Override
+		public void run() {captureFrames();}
+	};
+
+	/**
+	 * Makes a capture for any feed ffmpeg can open, such as an MJPEG url or a
+	 * local video file, whose frames are scaled by ffmpeg while decoding.
+	 *
+	 * @param url where the feed comes from
+	 * @param width the width of the frames handed out, 0 for the camera's own width
+	 * @param height the height of the frames handed out, 0 for the camera's own height
+	 */
+	public FrameCapture(String url, int width, int height) {
+		this.url = url;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Opens the feed. If it can't be reached, a solid black image stands in for it.
+	 */
+	private void open() {
+		// create a grabber object to extract frames from this camera
+		frameGrabber = new FFmpegFrameGrabber(url);
+		frameGrabber.setSampleRate(20);
+		configureGrabber();
+
+		try {
+			frameGrabber.start();
+		} catch (Exception e) {
+			//if we can't access the video feed, attempt to replace it with a solid black image
+			frameGrabber = new FFmpegFrameGrabber("src/media/blackImage.png");
+			configureGrabber();
+			try {
+				frameGrabber.start();
+			} catch (Exception e1) {
+				//if we can't access the backup image, just print an error
+				System.err.println("No internet and no black image...");
+			}
+		}
+	}
+
+	/**
+	 * Sets up decoding options on the grabber. Must be called before it starts.
+	 */
+	private void configureGrabber() {
+		// ask ffmpeg for the same byte layout JavaFX uses so frames can be copied without conversion
+		frameGrabber.setPixelFormat(avutil.AV_PIX_FMT_BGRA);
+		// let the decoder scale straight to the size we show, rather than copying and scaling full frames later
+		frameGrabber.setImageWidth(width);
+		frameGrabber.setImageHeight(height);
+	}
+
+	/**
+	 * Attempts to grab the next frame of the input video feed/file, opening
+	 * the feed first if this is the first grab.
+	 *
+	 * @return lotFrame the next frame of the acquired video feed/file
+	 */
+	public synchronized Frame getImage() {
+		if (frameGrabber == null) {
+			open();
+		}
+
+		long start = System.nanoTime();
+		try {
+			lotFrame = frameGrabber.grab();
+		} catch (Exception e) {
+			grabErrors.increment();
+			e.printStackTrace();
+		} finally {
+			grabTime.recordSince(start);
+		}
+		return lotFrame;
+	}
+
+	/**
+	 * Starts a thread that grabs frames as fast as the feed delivers them and
+	 * publishes each one to the mailbox.
+	 */
+	public void startCapture() {
+		startCapture(Thread.ofPlatform().name("capture-thread").daemon(true));
+	}
+
+	/**
+	 * Like startCapture(), but grabs on a virtual thread named after the
+	 * camera, for when there are many. A grab blocks in ffmpeg's native code,
+	 * which holds on to the carrier thread until the frame is in, so how many
+	 * feeds can be waiting on a frame at the same moment is bounded by
+	 * jdk.virtualThreadScheduler.parallelism (the number of cores by default).
+	 *
+	 * @param threadName what the capture thread is called
+	 */
+	public void startCapture(String threadName) {
+		startCapture(Thread.ofVirtual().name(threadName));
+	}
+
+	private synchronized void startCapture(Thread.Builder builder) {
+		if (captureThread == null) {
+			capturing = true;
+			captureThread = builder.start(captureLoop);
+		}
+	}
+
+	/**
+	 * Stops the capture thread and waits for it to finish its current grab.
+	 */
+	public void stopCapture() {
+		Thread thread;
+		synchronized (this) {
+			capturing = false;
+			thread = captureThread;
+			captureThread = null;
+		}
+		if (thread != null) {
+			//not holding the lock, the thread may need it to finish its grab
+			try {
+				thread.join(1000);
+			} catch (InterruptedException e) {
+				//stop waiting, but leave the interrupt for whoever asked for it
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return true while the capture thread is running
+	 */
+	public boolean isCapturing() {
+		return capturing;
+	}
+
+	/**
+	 * Sets the part of the frame that analysis needs. With cropping on, the
+	 * capture thread copies only this rectangle, which is all a headless
+	 * detector ever reads.
+	 *
+	 * @param bounds {x, y, width, height} in lot pane coordinates
+	 * @param crop true to copy only the region, false to copy whole frames for display
+	 */
+	public void setAnalysisRegion(int[] bounds, boolean crop) {
+		region = bounds;
+		cropToRegion = crop;
+	}
+
+	/**
+	 * @return the average number of bytes copied out of the grabber per frame
+	 */
+	public long getBytesCopiedPerFrame() {
+		return framesCopied == 0 ? 0 : bytesCopied / framesCopied;
+	}
+
+	/**
+	 * @return the average number of bytes per frame that cropping kept from being copied
+	 */
+	public long getBytesSavedPerFrame() {
+		return framesCopied == 0 ? 0 : bytesSaved / framesCopied;
+	}
+
+	/**
+	 * @return the average time in microseconds spent copying one frame out of the grabber
+	 */
+	public double getCopyMicrosPerFrame() {
+		return framesCopied == 0 ? 0 : copyNanos / 1000.0 / framesCopied;
+	}
+
+	private static int clamp(int v, int min, int max) {
+		return Math.max(min, Math.min(max, v));
+	}
+
+	/**
+	 * @return the mailbox that always holds the newest grabbed frame
+	 */
+	public FrameMailbox getMailbox() {
+		return mailbox;
+	}
+
+	/**
+	 * The body of the capture thread. Grabs, copies the pixels out of the
+	 * grabber's native buffer and publishes, until stopCapture() is called.
+	 */
+	private void captureFrames() {
+		while (capturing) {
+			if (!captureFrame()) {
+				//end of a file or a hiccup in the stream, don't spin on it
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Grabs one frame, copies the pixels out of the grabber's native buffer and
+	 * publishes them to the mailbox. Used by the capture thread, or directly by
+	 * whoever schedules grabbing when the capture has no thread of its own.
+	 * Must not be called from two threads at once.
+	 *
+	 * @return true if a frame was published, false if the feed had nothing
+	 */
+	public boolean captureFrame() {
+		Frame frame = getImage();
+		if (frame == null || frame.image == null || frame.image[0] == null) {
+			return false;
+		}
+
+		long start = System.nanoTime();
+		int ch = frame.imageChannels;
+		int x0 = 0, y0 = 0, w = frame.imageWidth, h = frame.imageHeight;
+		int[] r = region;
+		if (cropToRegion && r != null) {
+			//region is in pane coordinates, the frame may be a different size
+			x0 = clamp(r[0] * frame.imageWidth / FEED_WIDTH, 0, frame.imageWidth);
+			y0 = clamp(r[1] * frame.imageHeight / FEED_HEIGHT, 0, frame.imageHeight);
+			w = clamp((r[0] + r[2]) * frame.imageWidth / FEED_WIDTH + 1, x0, frame.imageWidth) - x0;
+			h = clamp((r[1] + r[3]) * frame.imageHeight / FEED_HEIGHT + 1, y0, frame.imageHeight) - y0;
+		}
+
+		int rowBytes = w * ch;
+		CapturedFrame copy = mailbox.obtain(rowBytes * h);
+		ByteBuffer src = (ByteBuffer) frame.image[0];
+		//the grabber reuses its buffer on the next grab, so the pixels are copied out row by row
+		for (int y = 0; y < h; y++) {
+			src.position((y0 + y) * frame.imageStride + x0 * ch);
+			src.get(copy.data, y * rowBytes, rowBytes);
+		}
+		src.position(0);
+		copy.width = w;
+		copy.height = h;
+		copy.channels = ch;
+		copy.stride = rowBytes;
+		copy.originX = x0;
+		copy.originY = y0;
+		copy.sourceWidth = frame.imageWidth;
+		copy.sourceHeight = frame.imageHeight;
+		copy.timestamp = System.currentTimeMillis();
+
+		long saved = (long) frame.imageStride * frame.imageHeight - rowBytes * h;
+		framesCopied++;
+		bytesCopied += rowBytes * h;
+		bytesSaved += saved;
+		copiedFrames.increment();
+		copiedBytes.add(rowBytes * h);
+		savedBytes.add(saved);
+		long copied = System.nanoTime() - start;
+		copyNanos += copied;
+		copyTime.record(copied);
+		mailbox.publish(copy);
+		return true;
+	}
+
+	/**
+	 * Stops capture and lets go of the feed. The capture can't be used afterwards.
+	 */
+	public void close() {
+		stopCapture();
+		synchronized (this) {
+			if (frameGrabber == null) {
+				return;
+			}
+			try {
+				frameGrabber.stop();
+				frameGrabber.release();
+			} catch (Exception e) {
+				System.err.println("Error: the camera feed could not be closed");
+				e.printStackTrace();
+			}
+		}
+	}
+
+}// end FrameCapture
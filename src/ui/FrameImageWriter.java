@@ -0,0 +1,104 @@
+package ui;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import org.bytedeco.javacv.Frame;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+
+/**
+ * Copies grabbed video frames into JavaFX images in bulk. Frames that are
+ * already in BGRA order are handed to the PixelWriter as-is, anything else
+ * is converted row by row into a reusable ARGB buffer and written with a
+ * single setPixels call.
+ *
+ * @version 1.0
+ */
+public class FrameImageWriter {
+
+	private final PixelFormat<ByteBuffer> bgraFormat = PixelFormat.getByteBgraPreInstance();
+	private final PixelFormat<IntBuffer> argbFormat = PixelFormat.getIntArgbInstance();
+
+	// scratch buffers, reused for as long as the frame size stays the same
+	private byte[] row = new byte[0];
+	private int[] argb = new int[0];
+
+	/**
+	 * Writes a grabbed frame into the top left corner of the given PixelWriter.
+	 *
+	 * @param frame
+	 *            a frame straight from the FrameGrabber
+	 * @param pw
+	 *            the PixelWriter of an image at least as big as the frame
+	 * @return true if the frame held 8 bit image data and was written
+	 */
+	public boolean write(Frame frame, PixelWriter pw) {
+		if (frame == null || frame.image == null || frame.image[0] == null || frame.imageDepth != Frame.DEPTH_UBYTE) {
+			return false;
+		}
+		return write((ByteBuffer) frame.image[0], frame.imageWidth, frame.imageHeight, frame.imageChannels,
+				frame.imageStride, pw);
+	}
+
+	/**
+	 * Writes packed 8 bit pixel data into the top left corner of the given
+	 * PixelWriter. Supports 4 channel BGRA, 3 channel BGR and 1 channel gray.
+	 *
+	 * @param pixels
+	 *            the pixel data, starting at index 0
+	 * @param width
+	 *            the width of the image in pixels
+	 * @param height
+	 *            the height of the image in pixels
+	 * @param channels
+	 *            the number of bytes per pixel
+	 * @param stride
+	 *            the number of bytes between the start of two rows
+	 * @param pw
+	 *            the PixelWriter of an image at least as big as the pixels
+	 * @return true if the channel layout was understood and the data written
+	 */
+	public boolean write(ByteBuffer pixels, int width, int height, int channels, int stride, PixelWriter pw) {
+		if (channels == 4) {
+			// ffmpeg already gave us the layout JavaFX uses internally, so
+			// there is nothing to convert. Alpha is always opaque, which makes
+			// the premultiplied format identical to the plain one.
+			pixels.position(0);
+			pw.setPixels(0, 0, width, height, bgraFormat, pixels, stride);
+			return true;
+		}
+		if (channels != 3 && channels != 1) {
+			return false;
+		}
+
+		if (argb.length < width * height) {
+			argb = new int[width * height];
+		}
+		if (row.length < width * channels) {
+			row = new byte[width * channels];
+		}
+
+		// walk the buffer row by row so that reads stay sequential in memory
+		for (int y = 0; y < height; y++) {
+			pixels.position(y * stride);
+			pixels.get(row, 0, width * channels);
+			int out = y * width;
+			if (channels == 3) {
+				for (int x = 0, i = 0; x < width; x++, i += 3) {
+					argb[out + x] = 0xFF000000 | (row[i + 2] & 0xFF) << 16 | (row[i + 1] & 0xFF) << 8 | (row[i] & 0xFF);
+				}
+			} else {
+				for (int x = 0; x < width; x++) {
+					int g = row[x] & 0xFF;
+					argb[out + x] = 0xFF000000 | g << 16 | g << 8 | g;
+				}
+			}
+		}
+		pixels.position(0);
+		pw.setPixels(0, 0, width, height, argbFormat, argb, 0, width);
+		return true;
+	}
+
+}// end FrameImageWriter
@@ -0,0 +1,124 @@
+package ui;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single slot, "latest frame wins" hand-off between the capture thread and
+ * any number of consumers. Publishing a frame replaces whatever was in the
+ * slot, so a slow consumer only ever sees the newest frame and never a
+ * backlog. Frame buffers are recycled through a lock-free free list.
+ *
+ * @version 1.0
+ */
+public class FrameMailbox {
+
+	private final AtomicReference<CapturedFrame> slot = new AtomicReference<CapturedFrame>();
+	private final ConcurrentLinkedQueue<CapturedFrame> free = new ConcurrentLinkedQueue<CapturedFrame>();
+	private long nextSequence = 1;
+
+	private final AtomicLong framesGrabbed = new AtomicLong();
+	private final AtomicLong framesDropped = new AtomicLong();
+	private final AtomicLong framesConsumed = new AtomicLong();
+
+	/**
+	 * Gets an unused frame for the producer to fill. Only the capture thread
+	 * may call this.
+	 *
+	 * @param capacity
+	 *            the number of bytes the frame has to hold
+	 * @return a frame that nobody else references
+	 */
+	public CapturedFrame obtain(int capacity) {
+		CapturedFrame frame = free.poll();
+		// frames that are too small for the current feed are simply let go
+		while (frame != null && frame.data.length < capacity) {
+			frame = free.poll();
+		}
+		if (frame == null) {
+			frame = new CapturedFrame(capacity);
+		}
+		return frame;
+	}
+
+	/**
+	 * Makes a filled frame the newest one. If the frame it replaces was never
+	 * picked up by a consumer, it is counted as dropped. Only the capture
+	 * thread may call this.
+	 *
+	 * @param frame
+	 *            a frame from obtain() that has been filled with pixels
+	 */
+	public void publish(CapturedFrame frame) {
+		frame.sequence = nextSequence++;
+		frame.taken = false;
+		frame.refs.set(1); // the slot's own reference
+		framesGrabbed.incrementAndGet();
+
+		CapturedFrame old = slot.getAndSet(frame);
+		if (old != null) {
+			if (!old.taken) {
+				framesDropped.incrementAndGet();
+			}
+			release(old);
+		}
+	}
+
+	/**
+	 * Takes hold of the newest frame if it is newer than the one the caller
+	 * saw last. The frame must be handed back with release().
+	 *
+	 * @param lastSequence
+	 *            the sequence number of the last frame the caller processed
+	 * @return the newest frame, or null if there is nothing new
+	 */
+	public CapturedFrame acquire(long lastSequence) {
+		while (true) {
+			CapturedFrame frame = slot.get();
+			if (frame == null || frame.sequence <= lastSequence) {
+				return null;
+			}
+			if (frame.tryRetain()) {
+				frame.taken = true;
+				framesConsumed.incrementAndGet();
+				return frame;
+			}
+			// the frame was replaced and recycled while we looked at it, try the new one
+		}
+	}
+
+	/**
+	 * Hands a frame back. Once nobody holds it anymore, its buffer is reused.
+	 *
+	 * @param frame
+	 *            a frame from acquire()
+	 */
+	public void release(CapturedFrame frame) {
+		if (frame.refs.decrementAndGet() == 0) {
+			free.offer(frame);
+		}
+	}
+
+	/**
+	 * @return the number of frames the capture thread has published
+	 */
+	public long getFramesGrabbed() {
+		return framesGrabbed.get();
+	}
+
+	/**
+	 * @return the number of frames that were replaced before anyone used them
+	 */
+	public long getFramesDropped() {
+		return framesDropped.get();
+	}
+
+	/**
+	 * @return the number of times a consumer picked up a frame
+	 */
+	public long getFramesConsumed() {
+		return framesConsumed.get();
+	}
+
+}// end FrameMailbox
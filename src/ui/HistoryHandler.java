@@ -3,26 +3,21 @@ package ui;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Random;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import java.util.TimeZone;
 
 /**
  * Class responsible for history file IO
@@ -36,22 +31,32 @@ public class HistoryHandler {
 	// Some class definitions
 	File historyFile;
 	File parkingHistoryFile; 
-	DocumentBuilderFactory dbFactory;
-	DocumentBuilder dBuilder;
-	Document doc;
-
-	TransformerFactory transformerFactory;
-	Transformer transformer;
-	DOMSource source;
-	StreamResult result;
 
 	DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
 	DateFormat timeFormat = new SimpleDateFormat("H:mm a");
 
 	int histL = 8;
 	int timeIncr = 28;
-	int numSpots = 25; 
-	int[][][] spots; // [day][time][spot no.]
+	// the spots of the lot, as many as the spot layout or the detector has
+	int numSpots;
+
+	// every sample goes into the binary log, the xml is only written on request
+	OccupancyLog log;
+	// every spot that flips goes into the change log, which the engine feeds
+	ChangeLog changeLog;
+	// the samples taken at the times in timeOfDay also go into the store, which is what the graphs read from.
+	// Null if it couldn't be opened: samples are then only logged and the graphs show an empty lot
+	HistoryStore store;
+	// minutes after midnight of every entry in timeOfDay
+	int[] slotMinutes;
+	// running per weekday/slot statistics, kept up to date as samples are stored
+	OccupancyAggregates aggregates;
+	// percent series handed out since the last write, so repeated chart queries don't touch the store
+	private double[][] allPercentsCache;
+	private final HashMap<Integer, int[]> daysAgoPercentsCache = new HashMap<Integer, int[]>();
+	private final HashMap<Integer, int[]> usualPercentsCache = new HashMap<Integer, int[]>();
+	private static final LatencyHistogram appendTime = Metrics.histogram("history.append");
+	private static final LatencyHistogram readTime = Metrics.histogram("history.read");
 
 	
 	// some random dates used for testing
@@ -66,248 +71,338 @@ public class HistoryHandler {
 			"8:30 PM", "9:00 PM" };
 
 	public HistoryHandler() {
+		this(new File("media"));
+	}
 
-		historyFile = new File("media/8_day_history.xml");
-		parkingHistoryFile = new File("media/Parking_History.txt");
-		result = new StreamResult(historyFile);
-		dbFactory = DocumentBuilderFactory.newInstance();
-		try {
-			// make the document builder, then the document
-			dBuilder = dbFactory.newDocumentBuilder();
-			doc = dBuilder.parse(historyFile);
-
-			// make the objects that do the writing
-			transformerFactory = TransformerFactory.newInstance();
-			transformer = transformerFactory.newTransformer();
-
-			// makes the xml formatted nicely
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-
-			// set the input and output for writing
-			source = new DOMSource(doc);
-			result = new StreamResult(historyFile);
-		} catch (Exception e) {}
+	/**
+	 * Opens the history kept in a directory other than media, such as a
+	 * scratch directory for benchmarks, for the spots of our lot.
+	 * 
+	 * @param dir the directory holding the history files
+	 */
+	public HistoryHandler(File dir) {
+		this(dir, SpotLayout.getSpotQuads().length);
 	}
 
 	/**
-	 * Appends the current state of the spots to the end of the history file and tags it with the current date and time.
+	 * Opens the history kept in a directory for a lot with any number of
+	 * spots. The logs and the store remember the spot count they were made
+	 * for and refuse to open for a different one.
 	 * 
-	 * @param nowSpots the current state of the lot
+	 * @param dir the directory holding the history files
+	 * @param numSpots the number of spots in every sample
 	 */
-	public void appendCurrentTime(int[] nowSpots) {
+	public HistoryHandler(File dir, int numSpots) {
+		this.numSpots = numSpots;
+
+		historyFile = new File(dir, "8_day_history.xml");
+		log = new OccupancyLog(new File(dir, "history"), numSpots);
+		changeLog = new ChangeLog(new File(dir, "changes"));
+		parkingHistoryFile = new File(dir, "Parking_History.txt");
+
+		// work out when each time slot starts
+		slotMinutes = new int[timeOfDay.length];
+		DateFormat slotFormat = new SimpleDateFormat("h:mm a", Locale.US);
+		Calendar slotCal = Calendar.getInstance();
+		for (int j = 0; j < timeOfDay.length; j++) {
+			try {
+				slotCal.setTime(slotFormat.parse(timeOfDay[j]));
+				slotMinutes[j] = slotCal.get(Calendar.HOUR_OF_DAY) * 60 + slotCal.get(Calendar.MINUTE);
+			} catch (java.text.ParseException e) {
+				slotMinutes[j] = -1;
+			}
+		}
 
+		aggregates = new OccupancyAggregates(timeIncr);
 		try {
-			// make a new DOM object from the history document
-			doc = dBuilder.parse(historyFile);
-			doc.getDocumentElement().normalize();
-
-			// extract the root element
-			Element rootElement = doc.getDocumentElement();
-
-			// get this list of days
-			NodeList days = rootElement.getElementsByTagName("day");
-
-			// make sure that there is already a day for today
-			boolean todayIsOnFile = days.item(days.getLength() - 1).getAttributes().getNamedItem("date").toString()
-					.equals(dateFormat.format(Calendar.getInstance().getTime()));
-			if (!todayIsOnFile) {
-				Element day = doc.createElement("day");
-				rootElement.appendChild(day);
-				day.setAttribute("date", dateFormat.format(Calendar.getInstance().getTime()));
-				days = rootElement.getElementsByTagName("day");
+			store = new HistoryStore(new File(dir, "history.map"), numSpots, timeIncr);
+		} catch (IOException e) {
+			System.err.println("Error in history reader. Unable to open the history store");
+			e.printStackTrace();
+			return;
+		}
+		try {
+			// the first time around, carry over whatever the old xml history holds
+			if (store.isEmpty() && historyFile.exists()) {
+				importXml(historyFile);
+			} else {
+				rebuildAggregates();
 			}
+		} catch (IOException e) {
+			System.err.println("Error in history reader. Unable to import the xml history");
+			e.printStackTrace();
+		}
+	}
 
-			// make a new element to hold the data at the current time, set it's
-			// "time" attribute to be the current time, set it's text content to
-			// be the data
-			Element currentData = doc.createElement("spotmatrix");
-			currentData.setAttribute("time", timeFormat.format(Calendar.getInstance().getTime()));
-			currentData.setTextContent(intMatToStr(nowSpots));
-
-			// add the current data element to the rest of the document object
-			days.item(days.getLength() - 1).appendChild(currentData);
-
-			// writes to the xml file
-			transformer.transform(source, result);
+	/**
+	 * Appends the current state of the spots to the end of the history log and tags it with the current date and time.
+	 * 
+	 * @param nowSpots the current state of the lot
+	 */
+	public void appendCurrentTime(SpotBitSet nowSpots) {
+		long now = System.currentTimeMillis();
+		long start = System.nanoTime();
+		try {
+			log.append(now, nowSpots);
+			int slot = slotOf(now);
+			if (slot >= 0 && store != null) {
+				putSample(HistoryStore.dayOf(now), slot, nowSpots);
+			}
+		} catch (IOException e) {
+			System.err.println("Error in history writer. Unable to append the current spots");
+			e.printStackTrace();
+		} finally {
+			appendTime.recordSince(start);
+		}
+	}
 
-		} catch (Exception e) {
+	/**
+	 * Writes the history to the history xml file, for anything that still
+	 * reads the old format.
+	 */
+	public void exportXml() {
+		try {
+			exportXml(historyFile);
+		} catch (IOException e) {
+			System.err.println("Error in history writer. Unable to export the history as xml");
+			e.printStackTrace();
 		}
+	}
 
+	/**
+	 * Writes the last histL days of the store in the old 8_day_history.xml
+	 * layout: a day element per date, oldest first, each holding a
+	 * spotmatrix for every entry in timeOfDay. Dates are written the way the
+	 * old code wrote them, with the month counted from 0, and slots that
+	 * were never sampled come out as an empty lot, as the old file had them.
+	 * importXml reads the file back.
+	 * 
+	 * @param xmlFile
+	 *            the file to write
+	 * @throws IOException
+	 *             if the store isn't open or the file can't be written
+	 */
+	public synchronized void exportXml(File xmlFile) throws IOException {
+		if (store == null) {
+			throw new IOException("the history store is not open");
+		}
+		SpotBitSet spots = new SpotBitSet(numSpots);
+		// day numbers count local days from the epoch, so as UTC they land on the right date
+		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		Writer writer = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(xmlFile), StandardCharsets.UTF_8));
+		try {
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n<lot>\n");
+			if (!store.isEmpty()) {
+				for (long day = Math.max(store.getFirstDay(), store.getLastDay() - histL + 1); day <= store
+						.getLastDay(); day++) {
+					cal.setTimeInMillis(day * 24L * 60 * 60 * 1000);
+					writer.write("  <day date=\"" + cal.get(Calendar.YEAR) + "-" + cal.get(Calendar.MONTH) + "-"
+							+ cal.get(Calendar.DAY_OF_MONTH) + "\">\n");
+					for (int j = 0; j < timeIncr; j++) {
+						store.read(day, j, spots);
+						writer.write("    <spotmatrix time=\"" + timeOfDay[j] + "\">" + spots.toDigitString()
+								+ "</spotmatrix>\n");
+					}
+					writer.write("  </day>\n");
+				}
+			}
+			writer.write("</lot>\n");
+		} finally {
+			writer.close();
+		}
 	}
 
 	/**
-	 * This method modifies the history file completely, committing a whole new
+	 * This method modifies the history completely, committing a whole new
 	 * set of data.
 	 * 
 	 * @param spots
-	 *            An array of integers that represents the new weeks worth of
+	 *            An array of spot states that represents the new weeks worth of
 	 *            data
 	 * @param dates
 	 *            An array of GregorianCalendar objects that holds the
 	 *            corresponding dates for the days being committed
 	 */
-	public void commitWeekData(int[][][] spots, GregorianCalendar[] dates) {
-
-		this.spots = spots;
-
-		// make new dom object using the builder
-		doc = dBuilder.newDocument();
-
-		// create the root element which is just a lot and add it to doc
-		Element rootElement = doc.createElement("lot");
-		doc.appendChild(rootElement);
-		Element[] day = new Element[histL];
-		Element[] spotmatrix = new Element[timeIncr];
-
-		// Fill in the document with the content we want here
-		// ----------------------------------------------------------------
-		// loop through days
-		for (int i = 0; i < histL; i++) {
-
-			// create an element for days, give it a date attribute, and add it
-			// as a child of lot
-			day[i] = doc.createElement("day");
-			rootElement.appendChild(day[i]);
-			day[i].setAttribute("date", dates[i].get(Calendar.YEAR) + "-" + dates[i].get(Calendar.MONTH) + "-"
-					+ dates[i].get(Calendar.DAY_OF_MONTH));
-
-			// loop through all the times of day
-			for (int j = 0; j < timeIncr; j++) {
-				// create an element to hold the actual data, give it a time
-				// attribute, add it as a child of day
-				spotmatrix[j] = doc.createElement("spotmatrix");
-				day[i].appendChild(spotmatrix[j]);
-				spotmatrix[j].setAttribute("time", timeOfDay[j]);
-				spotmatrix[j].appendChild(doc.createTextNode(intMatToStr(spots[i][j])));
-			}
-		}
-		// --------------------------------------------------------------
-
-		// write the content into xml file
-		try {
-			transformer.transform(source, result);
-		} catch (Exception e) {
+	public void commitWeekData(SpotBitSet[][] spots, GregorianCalendar[] dates) {
+		for (int i = 0; i < spots.length && i < dates.length; i++) {
+			appendDay(spots[i], dates[i]);
 		}
 	}
 
 	/**
-	 * This method adds a single day to the end of the history and removes the
-	 * oldest day if the history is at max capacity
+	 * This method adds a single day to the history, replacing whatever was
+	 * stored for that date
 	 * 
 	 * @param spots
-	 *            An array of integers that represents a days worth of data
-	 * @param dates
+	 *            An array of spot states that represents a days worth of data
+	 * @param date
 	 *            A GregorianCalendar object that holds the corresponding date
 	 *            for the day being committed
 	 */
-	public void appendDay(int[][] spots, GregorianCalendar date) {
-
+	public void appendDay(SpotBitSet[] spots, GregorianCalendar date) {
+		long day = HistoryStore.dayOf(date.getTimeInMillis());
 		try {
-			doc = dBuilder.parse(historyFile);
-
-			doc.getDocumentElement().normalize();
-
-			// Fill in the document with the content we want
-			// here------------------------------------------------
-			Element rootElement = doc.getDocumentElement();
-
-			// If the file already has the maximum number of days stored, remove
-			// the oldest one
-			if (rootElement.getElementsByTagName("day").getLength() < histL) {
-				rootElement.removeChild(rootElement.getElementsByTagName("day").item(0));
-			}
-
-			Element day = doc.createElement("day");
-			rootElement.appendChild(day);
-			Element[] spotmatrix = new Element[timeOfDay.length];
-
-			day.setAttribute("date",
-					date.get(Calendar.YEAR) + "-" + date.get(Calendar.MONTH) + "-" + date.get(Calendar.DAY_OF_MONTH));
-
 			// loop through all the times of day
-			for (int j = 0; j < timeOfDay.length; j++) {
-				// create an element to hold the actual data, give it a time
-				// attribute, add it as a child of day
-				spotmatrix[j] = doc.createElement("spotmatrix");
-				day.appendChild(spotmatrix[j]);
-				spotmatrix[j].setAttribute("time", timeOfDay[j]);
-				spotmatrix[j].appendChild(doc.createTextNode(intMatToStr(spots[j])));
+			for (int j = 0; j < timeIncr && j < spots.length; j++) {
+				putSample(day, j, spots[j]);
 			}
-			// ---------------------------------------------------------------------------------------------------
-
-			// write the DOM to the xml file
-			transformer.transform(source, result);
-
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
 	/**
-	 * Reads the history file and creates a new DOM object in the doc class
-	 * variable
+	 * Streams an old style xml history file into the history store. Whatever
+	 * the file holds for a slot replaces what the store had, and days older
+	 * than the store's are added in front of them.
+	 * 
+	 * @param xmlFile
+	 *            a file in the 8_day_history.xml layout
+	 * @return the number of time slots imported
+	 * @throws IOException
+	 *             if the file can't be read or the history store isn't open
 	 */
-	public void getDOM() {
-		// make a new DOM object from the history document
-		try {
-			doc = dBuilder.parse(historyFile);
-		} catch (SAXException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+	public int importXml(File xmlFile) throws IOException {
+		if (store == null) {
+			throw new IOException("the history store is not open");
+		}
+		LegacyHistoryImporter importer = new LegacyHistoryImporter(timeOfDay, numSpots);
+		int records = importer.importFile(xmlFile, new LegacyHistoryImporter.Sink() {
+			@Override
+			public void accept(long day, int slot, SpotBitSet spots) throws IOException {
+				putSample(day, slot, spots);
+			}
+		});
+		store.force();
+		if (importer.getSkippedDays() > 0) {
+			System.err.println("Skipped " + importer.getSkippedDays() + " days (" + importer.getSkippedRecords()
+					+ " time slots) without a valid date in " + xmlFile);
 		}
-		doc.getDocumentElement().normalize();
+		return records;
 	}
 
 	/**
-	 * This method retrieves the current parking history and stores it in the
-	 * spots class variable
-	 * 
+	 * Stores one time slot and keeps the aggregates and caches in step with it.
 	 */
-	private void readData() {
+	private synchronized void putSample(long day, int slot, SpotBitSet spots) throws IOException {
+		if (store == null) {
+			throw new IOException("the history store is not open");
+		}
+		int weekday = OccupancyAggregates.weekdayOf(day);
+		if (store.has(day, slot)) {
+			// the slot is being overwritten, so its old sample no longer counts
+			aggregates.remove(weekday, slot, 100 * store.getCount(day, slot) / numSpots);
+		}
+		store.put(day, slot, spots);
+		aggregates.add(weekday, slot, 100 * spots.cardinality() / numSpots);
 
-		spots = new int[histL][timeIncr][numSpots];
+		clearCaches();
+	}
 
-		getDOM();
+	/**
+	 * Forgets the percent series handed out so far, so the next query reads
+	 * the store again.
+	 */
+	public synchronized void clearCaches() {
+		allPercentsCache = null;
+		daysAgoPercentsCache.clear();
+		usualPercentsCache.clear();
+	}
 
+	/**
+	 * Flushes and closes the logs and the store. The handler can't be used
+	 * afterwards.
+	 */
+	public synchronized void close() {
 		try {
+			log.close();
+			changeLog.close();
+			if (store != null) {
+				store.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Error in history writer. Unable to close the history");
+			e.printStackTrace();
+		}
+	}
 
-			// extract the root element
-			Element rootElement = doc.getDocumentElement();
+	/**
+	 * Counts every sample in the store into the aggregates. Only needed once at
+	 * startup, afterwards they are updated as samples come in.
+	 */
+	private void rebuildAggregates() {
+		if (store == null || store.isEmpty()) {
+			return;
+		}
+		for (long day = store.getFirstDay(); day <= store.getLastDay(); day++) {
+			int weekday = OccupancyAggregates.weekdayOf(day);
+			for (int j = 0; j < timeIncr; j++) {
+				if (store.has(day, j)) {
+					aggregates.add(weekday, j, 100 * store.getCount(day, j) / numSpots);
+				}
+			}
+		}
+	}
 
-			// get this list of days
-			NodeList days = rootElement.getElementsByTagName("day");
+	/**
+	 * Gives access to the running per weekday and time slot statistics, for
+	 * things like "how full is it usually on a Tuesday at 9:00".
+	 * 
+	 * @return the aggregates, indexed by weekday (0 is Sunday) and index into timeOfDay
+	 */
+	public OccupancyAggregates getAggregates() {
+		return aggregates;
+	}
 
-			// loop through days
-			for (int i = 0; i < histL; i++) {
-				// loop through time increments in day
-				for (int j = 0; j < timeIncr; j++) {
-					// get the spot array at day i, and time j and convert from
-					// string to int matrix
-					
-					/*
-					 * for whatever reason, the brilliant minds behind xml consider
-					 * whitespace as a Document object node. So after ~4 hours of pain
-					 * I changed the code to cycle through every 2*j+1 element instead
-					 * of every j element
-					 */
-					spots[i][j] = strToIntMat(days.item(i).getChildNodes().item(2*j+1).getTextContent());
-				}
+	/**
+	 * @return the log that keeps every spot change, to be added to a SpotChangeStream
+	 */
+	public ChangeLog getChangeLog() {
+		return changeLog;
+	}
+
+	/**
+	 * Works out which time slot a moment falls in.
+	 * 
+	 * @param timeMillis
+	 *            epoch milliseconds
+	 * @return the index into timeOfDay, or -1 if that time isn't kept track of
+	 */
+	public int slotOf(long timeMillis) {
+		Calendar now = Calendar.getInstance();
+		now.setTimeInMillis(timeMillis);
+		int minutes = now.get(Calendar.HOUR_OF_DAY) * 60 + now.get(Calendar.MINUTE);
+		// samples belong to the half hour they were taken in
+		minutes -= minutes % 30;
+		for (int j = 0; j < slotMinutes.length; j++) {
+			if (slotMinutes[j] == minutes) {
+				return j;
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
 		}
+		return -1;
 	}
 
 	/**
-	 * This method reads the history file and returns last weeks parking data
+	 * Finds the stored day a number of days before the newest one. If history
+	 * is exceeded, oldest entry is used. Only call with the store open.
+	 */
+	private long daysAgo(int numDaysAgo) {
+		long day = store.getLastDay() - numDaysAgo;
+		return Math.max(day, store.getFirstDay());
+	}
+
+	/**
+	 * This method reads the history and returns last weeks parking data
 	 * 
-	 * @return spots an array of integers that represents the previous weeks
-	 *         data
+	 * @return spots an array of spot states that represents the previous weeks
+	 *         data, oldest day first
 	 */
-	public int[][][] getWeekRaw() {
-		readData();
+	public SpotBitSet[][] getWeekRaw() {
+		SpotBitSet[][] spots = new SpotBitSet[histL][];
+		for (int i = 0; i < histL; i++) {
+			spots[i] = getDaysAgoRaw(histL - 1 - i);
+		}
 		return spots;
 	}
 
@@ -317,71 +412,76 @@ public class HistoryHandler {
 	 * 
 	 * @param numDaysAgo
 	 *            number of days in the past to look
-	 * @return an array of integers that represents the parking data from the
+	 * @return an array of spot states that represents the parking data from the
 	 *         specified day
 	 */
-	public int[][] getDaysAgoRaw(int numDaysAgo) {
-		readData();
-		try {
-			return spots[histL - 1 - numDaysAgo];
-		} catch (ArrayIndexOutOfBoundsException aioobe) {
-			return spots[0];
+	public SpotBitSet[] getDaysAgoRaw(int numDaysAgo) {
+		long start = System.nanoTime();
+		SpotBitSet[] daySpots = new SpotBitSet[timeIncr];
+		for (int j = 0; j < timeIncr; j++) {
+			daySpots[j] = new SpotBitSet(numSpots);
+		}
+		if (store != null) {
+			long day = daysAgo(numDaysAgo);
+			for (int j = 0; j < timeIncr; j++) {
+				store.read(day, j, daySpots[j]);
+			}
 		}
+		readTime.recordSince(start);
+		return daySpots;
 	}
 
 	/**
-	 * This method reads the history file and returns the last weeks percentage
+	 * This method reads the history and returns the last weeks percentage
 	 * full data
 	 * 
 	 * @return wPercents an array of double that represents the percentage full
-	 *         data of the last week
+	 *         data of the last week, oldest day first. Shared with other
+	 *         callers, so it must not be modified
 	 */
-	public double[][] getAllPercents() {
-		readData();
-
+	public synchronized double[][] getAllPercents() {
+		long start = System.nanoTime();
+		if (allPercentsCache != null) {
+			readTime.recordSince(start);
+			return allPercentsCache;
+		}
 		double[][] wPercents = new double[histL][timeIncr];
 
-		int numFull;
-
-		for (int i = 0; i < histL; i++) {
+		for (int i = 0; i < histL && store != null; i++) {
+			long day = daysAgo(histL - 1 - i);
 			for (int j = 0; j < timeIncr; j++) {
-
-				numFull = 0;
-
-				for (int k = 0; k < numSpots; k++) {
-					numFull += spots[i][j][k];
-				}
-
-				wPercents[i][j] = 100 * (new Integer(numFull).doubleValue()) / (new Integer(numSpots).doubleValue());
+				wPercents[i][j] = 100.0 * store.getCount(day, j) / numSpots;
 			}
 		}
 
+		allPercentsCache = wPercents;
+		readTime.recordSince(start);
 		return wPercents;
 	}
 
 	/**
 	 * Prints the data to a human-readable plaintext file
 	 * 
-	 * @param parkingHistoryFile
 	 * @throws FileNotFoundException
 	 */
 	public void saveAsPlainText() throws FileNotFoundException {
-		// get the percent full data for the saved history. This will automatically make sure the DOM is updated
 		double[][] percents = getAllPercents();
-		NodeList days = doc.getDocumentElement().getElementsByTagName("day");
-		System.out.println("this many days: "+days.getLength());
 		
 		BufferedWriter writer;
 		try {
 			writer = new BufferedWriter(new FileWriter(parkingHistoryFile.getAbsoluteFile()));
 			for (int i = 0; i < histL; i++) {
+				// day numbers are local days, turn one back into a date to print it
+				String date = "unknown";
+				if (store != null) {
+					long dayStart = daysAgo(histL - 1 - i) * 24L * 60 * 60 * 1000;
+					date = dateFormat.format(new Date(dayStart - TimeZone.getDefault().getOffset(dayStart)));
+				}
 				
 				writer.write("\n\nDate:\t\tTime:\t\t%Full:\n");
 				writer.write("--------------------------------------------------------\n");
 				for (int j = 0; j < timeIncr; j++) {
-					writer.write(days.item(i).getAttributes().getNamedItem("date").getNodeValue() + "\t"
-							+ days.item(i).getChildNodes().item(2*j+1).getAttributes().getNamedItem("time").getNodeValue() + "         "
-							+ String.valueOf(percents[i][j]) + "\n");
+					writer.write(date + "\t" + timeOfDay[j] + "         " + String.valueOf(percents[i][j]) + "\n");
 				}
 				
 			}
@@ -394,98 +494,111 @@ public class HistoryHandler {
 	}
 
 	/**
-	 * This method reads the history file and returns the specified days
+	 * This method reads the history and returns the specified days
 	 * percentage full data
 	 * 
 	 * @param numDaysAgo
 	 *            number of days in the past to look
-	 * @return wPercents an array of double that represents the percentage full
-	 *         data of the specified day
+	 * @return wPercents an array of int that represents the percentage full
+	 *         data of the specified day. Shared with other callers, so it must
+	 *         not be modified
 	 */
-	public int[] getDaysAgoPercents(int numDaysAgo) {
-		readData();
-		int[] percents = new int[timeIncr];
+	public synchronized int[] getDaysAgoPercents(int numDaysAgo) {
+		long start = System.nanoTime();
+		int[] percents = daysAgoPercentsCache.get(numDaysAgo);
+		if (percents != null) {
+			readTime.recordSince(start);
+			return percents;
+		}
+		percents = new int[timeIncr];
+		if (store != null) {
+			long day = daysAgo(numDaysAgo);
+			for (int j = 0; j < timeIncr; j++) {
+				percents[j] = 100 * store.getCount(day, j) / numSpots;
+			}
+		}
+		daysAgoPercentsCache.put(numDaysAgo, percents);
+		readTime.recordSince(start);
+		return percents;
+	}
 
-		for (int j = 0; j < timeIncr; j++) {
-			int numFull = 0;
-			for (int k = 0; k < numSpots; k++) {
-				try {
-					numFull += spots[histL - 1 - numDaysAgo][j][k];
-				} catch (ArrayIndexOutOfBoundsException aioobe) {
-					numFull += spots[0][j][k];
-				}
+	/**
+	 * Reads how full the lot usually is, over all the stored history, on the
+	 * day of the week of a day in the past. Answered from the aggregates, so
+	 * it costs the same however much history there is.
+	 * 
+	 * @param numDaysAgo
+	 *            number of days in the past to look
+	 * @return the mean percentage full per time slot on that day of the week,
+	 *         0 where nothing was stored. Shared with other callers, so it must
+	 *         not be modified
+	 */
+	public synchronized int[] getUsualPercents(int numDaysAgo) {
+		long start = System.nanoTime();
+		int weekday = store == null || store.isEmpty() ? -1 : OccupancyAggregates.weekdayOf(daysAgo(numDaysAgo));
+		int[] percents = usualPercentsCache.get(weekday);
+		if (percents != null) {
+			readTime.recordSince(start);
+			return percents;
+		}
+		percents = new int[timeIncr];
+		if (weekday >= 0) {
+			for (int j = 0; j < timeIncr; j++) {
+				percents[j] = (int) Math.round(aggregates.getMean(weekday, j));
 			}
-			percents[j] = 100 * numFull / numSpots;
 		}
+		usualPercentsCache.put(weekday, percents);
+		readTime.recordSince(start);
 		return percents;
 	}
 
 	/**
-	 * Converts an integer array to a String
+	 * Converts a set of spot states to a String
 	 * 
 	 * @param mat
-	 *            an array of integers
-	 * @return str the string representation of the integers
+	 *            the spot states
+	 * @return str one '0' or '1' per spot
 	 */
-	public String intMatToStr(int[] mat) {
-		String str = "";
-		for (int i = 0; i < mat.length; i++) {
-			str = str + mat[i];
-		}
-		return str;
+	public String intMatToStr(SpotBitSet mat) {
+		return mat.toDigitString();
 	}
 
 	/**
-	 * Converts a string to an array of integers
+	 * Converts a string to a set of spot states
 	 * 
 	 * @param str
-	 *            a string made up of numerical characters
-	 * @return mat an array of integers
+	 *            a string made up of '0' and '1' characters
+	 * @return mat the spot states. An empty string, which is sometimes passed
+	 *         at boot, gives all empty spots
 	 */
-	public int[] strToIntMat(String str) {
-		str.trim();
-		int[] mat = new int[numSpots];
-
-		for (int i = 0; i < str.length(); i++) {
-			try{
-			mat[i] = Integer.parseInt(String.valueOf(str.charAt(i)).trim());
-			}catch(NumberFormatException e){
-				//at boot, this method is sometimes passed an empty string
-				//it doesn't like that
-			}
-		}
-		return mat;
+	public SpotBitSet strToIntMat(String str) {
+		return SpotBitSet.parse(str, numSpots);
 	}
 
 	// these methods make random data for testing---
 	// not included in the javadoc-------------
-	public int[][][] makeRandSpots3() {
-
-		int[][][] spots = new int[histL][timeIncr][numSpots];
-		Random rando = new Random();
+	public SpotBitSet[][] makeRandSpots3() {
 
+		SpotBitSet[][] spots = new SpotBitSet[histL][];
 		for (int i = 0; i < histL; i++) {
-			for (int j = 0; j < timeIncr; j++) {
-				for (int k = 0; k < numSpots; k++) {
-					spots[i][j][k] = rando.nextBoolean() ? 1 : 0;
-				}
-			}
+			spots[i] = makeRandSpots2();
 		}
 		return spots;
 	}
 
-	public int[][] makeRandSpots2() {
+	public SpotBitSet[] makeRandSpots2() {
 
-		int[][] spots = new int[timeIncr][numSpots];
+		SpotBitSet[] spots = new SpotBitSet[timeIncr];
 		Random rando = new Random();
 
 		for (int j = 0; j < timeIncr; j++) {
+			spots[j] = new SpotBitSet(numSpots);
 			for (int k = 0; k < numSpots; k++) {
-				spots[j][k] = rando.nextBoolean() ? 1 : 0;
+				spots[j].set(k, rando.nextBoolean());
 			}
 		}
 		return spots;
 	}
 	// --------------------------------------------------------------------
 
-}// end HistoryHandler
\ No newline at end of file
+}// end HistoryHandler
@@ -0,0 +1,447 @@
+package ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Memory-mapped history of spot states, laid out as a grid of (day, time
+ * slot) records so any slot of any day is read straight from its offset.
+ * Nothing is parsed and the heap does not grow with the amount of history;
+ * the operating system pages the file in as needed.
+ *
+ * <pre>
+ * header:  int magic, int version, int numSpots, int slotsPerDay, long firstDay, long lastDay
+ * record:  int count, int present, long[ceil(numSpots/64)] spot bits (see SpotBitSet)
+ * </pre>
+ *
+ * Days are numbered in local days since 1970-01-01. Record (day, slot) sits at
+ * HEADER_BYTES + ((day - firstDay) * slotsPerDay + slot) * recordBytes.
+ * Storing a day older than firstDay moves every record up to make room, so
+ * days can come in any order, as when old history is imported into a store
+ * that already has live data. While records are being moved, a small journal
+ * next to the store says where the move started and how far it got; a store
+ * that is opened with a journal still there finishes the move first, so a
+ * crash in the middle of it doesn't leave a header that describes a different
+ * layout than the records.
+ *
+ * <pre>
+ * journal:  long old firstDay, long new firstDay, long lastDay, long days moved (newest first)
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class HistoryStore {
+
+	private static final int MAGIC = 0x4F434D31; // "OCM1"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	// the file is mapped this many days at a time
+	private static final int CHUNK_DAYS = 64;
+
+	private static final String JOURNAL_SUFFIX = ".prepend";
+	private static final int JOURNAL_BYTES = 32;
+
+	private final File journalFile;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final MappedByteBuffer header;
+	private final List<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+
+	private final int numSpots;
+	private final int slotsPerDay;
+	private final int words;
+	private final int recordBytes;
+	private final long chunkBytes;
+	private long firstDay;
+	private long lastDay;
+
+	/**
+	 * Opens a store, creating it if the file doesn't exist yet.
+	 *
+	 * @param storeFile
+	 *            the file that holds the store
+	 * @param numSpots
+	 *            the number of spots in every record
+	 * @param slotsPerDay
+	 *            the number of time slots kept for every day
+	 * @throws IOException
+	 *             if the file can't be opened, was made for a different lot,
+	 *             or an unfinished move can't be finished
+	 */
+	public HistoryStore(File storeFile, int numSpots, int slotsPerDay) throws IOException {
+		journalFile = new File(storeFile.getPath() + JOURNAL_SUFFIX);
+		this.numSpots = numSpots;
+		this.slotsPerDay = slotsPerDay;
+		words = SpotBitSet.wordsFor(numSpots);
+		recordBytes = 8 + 8 * words;
+		chunkBytes = (long) CHUNK_DAYS * slotsPerDay * recordBytes;
+
+		if (storeFile.getParentFile() != null) {
+			storeFile.getParentFile().mkdirs();
+		}
+		boolean fresh = !storeFile.exists() || storeFile.length() < HEADER_BYTES;
+		file = new RandomAccessFile(storeFile, "rw");
+		channel = file.getChannel();
+		header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+
+		if (fresh) {
+			header.putInt(0, MAGIC);
+			header.putInt(4, VERSION);
+			header.putInt(8, numSpots);
+			header.putInt(12, slotsPerDay);
+			header.putLong(16, -1);
+			header.putLong(24, -1);
+		} else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != numSpots
+				|| header.getInt(12) != slotsPerDay) {
+			file.close();
+			throw new IOException("history store has a different format, spot count or number of time slots");
+		}
+		firstDay = header.getLong(16);
+		lastDay = header.getLong(24);
+		if (journalFile.exists()) {
+			try {
+				recover();
+			} catch (IOException e) {
+				file.close();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Finishes a move that was cut short, or throws the journal away if only
+	 * deleting it was left to do.
+	 */
+	private void recover() throws IOException {
+		long[] j = readJournal();
+		if (j != null && firstDay == j[0] && lastDay == j[2]) {
+			System.err.println("Finishing a history store move that was interrupted");
+			movePrepend(j[0], j[1], j[3], Integer.MAX_VALUE);
+		} else if (j != null && firstDay != j[1]) {
+			throw new IOException("history store move journal " + journalFile + " doesn't match the store");
+		}
+		// a journal that was cut short was never followed by a move, and one
+		// that has the header's first day only wasn't deleted yet
+		journalFile.delete();
+	}
+
+	/**
+	 * Works out which local day a moment falls on.
+	 *
+	 * @param timeMillis
+	 *            epoch milliseconds
+	 * @return the number of local days since 1970-01-01
+	 */
+	public static long dayOf(long timeMillis) {
+		long local = timeMillis + TimeZone.getDefault().getOffset(timeMillis);
+		return Math.floorDiv(local, DAY_MILLIS);
+	}
+
+	/**
+	 * Stores the spot states of one time slot, replacing what was there.
+	 *
+	 * @param day
+	 *            a day number from dayOf()
+	 * @param slot
+	 *            the time slot, 0 to slotsPerDay-1
+	 * @param spots
+	 *            the spot states
+	 * @throws IOException
+	 *             if the file can't grow
+	 */
+	public synchronized void put(long day, int slot, SpotBitSet spots) throws IOException {
+		long at = reserve(day, slot);
+		MappedByteBuffer chunk = chunks.get((int) (at / chunkBytes));
+		int off = (int) (at % chunkBytes);
+		for (int w = 0; w < words; w++) {
+			chunk.putLong(off + 8 + 8 * w, w < spots.wordCount() ? spots.getWord(w) : 0);
+		}
+		chunk.putInt(off, spots.cardinality());
+		chunk.putInt(off + 4, 1);
+	}
+
+	/**
+	 * Reads the spot states of one time slot.
+	 *
+	 * @param day
+	 *            a day number from dayOf()
+	 * @param slot
+	 *            the time slot
+	 * @param spots
+	 *            receives the spot states
+	 * @return false if nothing was stored for that slot, spots is then all empty
+	 */
+	public synchronized boolean read(long day, int slot, SpotBitSet spots) {
+		long at = locate(day, slot);
+		if (at < 0 || !present(at)) {
+			spots.clear();
+			return false;
+		}
+		MappedByteBuffer chunk = chunks.get((int) (at / chunkBytes));
+		int off = (int) (at % chunkBytes);
+		for (int w = 0; w < words && w < spots.wordCount(); w++) {
+			spots.setWord(w, chunk.getLong(off + 8 + 8 * w));
+		}
+		return true;
+	}
+
+	/**
+	 * @param day
+	 *            a day number from dayOf()
+	 * @param slot
+	 *            the time slot
+	 * @return the number of taken spots in that slot, 0 if nothing was stored
+	 */
+	public synchronized int getCount(long day, int slot) {
+		long at = locate(day, slot);
+		if (at < 0) {
+			return 0;
+		}
+		return chunks.get((int) (at / chunkBytes)).getInt((int) (at % chunkBytes));
+	}
+
+	/**
+	 * @param day
+	 *            a day number from dayOf()
+	 * @param slot
+	 *            the time slot
+	 * @return true if something was stored for that slot
+	 */
+	public synchronized boolean has(long day, int slot) {
+		long at = locate(day, slot);
+		return at >= 0 && present(at);
+	}
+
+	/**
+	 * @return the oldest day in the store, or -1 if it is empty
+	 */
+	public synchronized long getFirstDay() {
+		return firstDay;
+	}
+
+	/**
+	 * @return the newest day in the store, or -1 if it is empty
+	 */
+	public synchronized long getLastDay() {
+		return lastDay;
+	}
+
+	/**
+	 * @return true if nothing has been stored yet
+	 */
+	public synchronized boolean isEmpty() {
+		return firstDay < 0;
+	}
+
+	/**
+	 * @return the number of spots in every record
+	 */
+	public int getNumSpots() {
+		return numSpots;
+	}
+
+	/**
+	 * Flushes the mapped pages to disk.
+	 */
+	public synchronized void force() {
+		header.force();
+		for (MappedByteBuffer chunk : chunks) {
+			chunk.force();
+		}
+	}
+
+	/**
+	 * Flushes and closes the file. The store can't be used afterwards.
+	 *
+	 * @throws IOException
+	 *             if the file can't be closed
+	 */
+	public synchronized void close() throws IOException {
+		force();
+		file.close();
+	}
+
+	private boolean present(long at) {
+		return chunks.get((int) (at / chunkBytes)).getInt((int) (at % chunkBytes) + 4) != 0;
+	}
+
+	/**
+	 * @return the file offset of a record minus HEADER_BYTES, or -1 if it is
+	 *         outside what has been stored
+	 */
+	private long locate(long day, int slot) {
+		if (firstDay < 0 || day < firstDay || day > lastDay || slot < 0 || slot >= slotsPerDay) {
+			return -1;
+		}
+		long at = ((day - firstDay) * slotsPerDay + slot) * recordBytes;
+		try {
+			mapThrough(at);
+		} catch (IOException e) {
+			return -1;
+		}
+		return at;
+	}
+
+	/**
+	 * Like locate(), but extends the store so the record exists.
+	 */
+	private long reserve(long day, int slot) throws IOException {
+		if (slot < 0 || slot >= slotsPerDay) {
+			throw new IOException("time slot " + slot + " is out of range");
+		}
+		if (firstDay < 0) {
+			firstDay = day;
+			header.putLong(16, firstDay);
+		} else if (day < firstDay) {
+			prepend(day);
+		}
+		if (day > lastDay) {
+			lastDay = day;
+			header.putLong(24, lastDay);
+		}
+		long at = ((day - firstDay) * slotsPerDay + slot) * recordBytes;
+		mapThrough(at);
+		return at;
+	}
+
+	/**
+	 * Moves every record further into the file so that day becomes the first
+	 * day, and clears the records of the days in between.
+	 */
+	private void prepend(long day) throws IOException {
+		prepend(day, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Like prepend(day), but gives up after moving maxBatches batches, the
+	 * way a crash would. Only tests stop early.
+	 *
+	 * @return true if the move was finished
+	 */
+	synchronized boolean prepend(long day, int maxBatches) throws IOException {
+		writeJournal(firstDay, day, 0);
+		return movePrepend(firstDay, day, 0, maxBatches);
+	}
+
+	/**
+	 * Does the moving for prepend(), starting after the newest moved days.
+	 * A day never spans two chunks, so records are moved a day at a time,
+	 * newest first, in batches of at most the shift: none of the days a batch
+	 * writes to are days it reads from, and days that haven't been moved are
+	 * never written to, so a batch that was cut short can simply be done
+	 * again. Each batch is forced to disk before the journal counts it.
+	 *
+	 * @return true if the move was finished
+	 */
+	private boolean movePrepend(long oldFirst, long newFirst, long moved, int maxBatches) throws IOException {
+		int dayBytes = slotsPerDay * recordBytes;
+		long shiftDays = oldFirst - newFirst;
+		long shift = shiftDays * dayBytes;
+		long stored = lastDay - oldFirst + 1;
+		mapThrough(shift + stored * dayBytes - 1);
+		byte[] buf = new byte[dayBytes];
+		for (int batch = 0; moved < stored; batch++) {
+			if (batch == maxBatches) {
+				return false;
+			}
+			long end = Math.max(0, stored - moved - shiftDays);
+			for (long d = stored - 1 - moved; d >= end; d--) {
+				copyDay(d * dayBytes, buf, true);
+				copyDay(d * dayBytes + shift, buf, false);
+			}
+			forceChunks();
+			moved = stored - end;
+			writeJournal(oldFirst, newFirst, moved);
+		}
+		Arrays.fill(buf, (byte) 0);
+		for (long at = 0; at < Math.min(shift, stored * dayBytes); at += dayBytes) {
+			copyDay(at, buf, false);
+		}
+		// the records are in place before the header says where they start
+		forceChunks();
+		firstDay = newFirst;
+		header.putLong(16, firstDay);
+		header.force();
+		journalFile.delete();
+		return true;
+	}
+
+	private void forceChunks() {
+		for (MappedByteBuffer chunk : chunks) {
+			chunk.force();
+		}
+	}
+
+	/**
+	 * Writes the journal of a move and forces it to disk.
+	 */
+	private void writeJournal(long oldFirst, long newFirst, long moved) throws IOException {
+		ByteBuffer j = ByteBuffer.allocate(JOURNAL_BYTES);
+		j.putLong(oldFirst).putLong(newFirst).putLong(lastDay).putLong(moved).flip();
+		RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+		try {
+			FileChannel ch = raf.getChannel();
+			while (j.hasRemaining()) {
+				ch.write(j, j.position());
+			}
+			ch.force(true);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return old firstDay, new firstDay, lastDay and days moved, or null if
+	 *         the journal was cut short while it was first written
+	 */
+	private long[] readJournal() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(journalFile, "r");
+		try {
+			if (raf.length() < JOURNAL_BYTES) {
+				return null;
+			}
+			long[] j = new long[4];
+			for (int i = 0; i < j.length; i++) {
+				j[i] = raf.readLong();
+			}
+			return j;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads the records of one day into buf, or writes buf over them.
+	 */
+	private void copyDay(long at, byte[] buf, boolean read) {
+		ByteBuffer chunk = chunks.get((int) (at / chunkBytes)).duplicate();
+		chunk.position((int) (at % chunkBytes));
+		if (read) {
+			chunk.get(buf);
+		} else {
+			chunk.put(buf);
+		}
+	}
+
+	/**
+	 * Maps chunks until the one holding the given record offset is mapped.
+	 * Mapping past the end of the file grows it, and new space reads as zero.
+	 */
+	private void mapThrough(long at) throws IOException {
+		int chunk = (int) (at / chunkBytes);
+		while (chunks.size() <= chunk) {
+			long start = HEADER_BYTES + chunks.size() * chunkBytes;
+			chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, start, chunkBytes));
+		}
+	}
+
+}// end HistoryStore
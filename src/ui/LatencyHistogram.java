@@ -0,0 +1,126 @@
+package ui;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long something took, in nanoseconds, cheaply enough to leave on
+ * in hot paths. Values go into log-linear buckets in the style of an HDR
+ * histogram: every power of two is split into 8 buckets, so any value is
+ * known to within 12.5% from 1 ns up to centuries, in under 500 longs.
+ * Recording is one bucket increment and two adds, with no locks and no
+ * allocation.
+ *
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Counts one value.
+	 *
+	 * @param nanos
+	 *            how long it took; negative values count as 0
+	 */
+	public void record(long nanos) {
+		long v = Math.max(0, nanos);
+		buckets.incrementAndGet(indexOf(v));
+		count.increment();
+		sum.add(v);
+		long m = max.get();
+		while (v > m && !max.compareAndSet(m, v)) {
+			m = max.get();
+		}
+	}
+
+	/**
+	 * Counts the time since a System.nanoTime() reading.
+	 *
+	 * @param startNanos
+	 *            when it started, from System.nanoTime()
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * @return the number of values counted
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the mean value in nanoseconds, 0 if there are none
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * @return the largest value in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param fraction
+	 *            which percentile, 0.99 for the 99th
+	 * @return the value that fraction of the values are at or below, in
+	 *         nanoseconds, to within a bucket. 0 if there are none
+	 */
+	public long getPercentile(double fraction) {
+		long n = count.sum();
+		if (n == 0) {
+			return 0;
+		}
+		long needed = Math.max(1, (long) Math.ceil(fraction * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= needed) {
+				// the top of the bucket, but never above what was actually seen
+				return Math.min(max.get(), upperBound(i));
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * @return the bucket a value goes into
+	 */
+	static int indexOf(long v) {
+		if (v < SUB_BUCKETS) {
+			return (int) v;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(v);
+		int sub = (int) (v >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return the largest value that goes into a bucket
+	 */
+	static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = index % SUB_BUCKETS;
+		long low = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+		long width = 1L << (exponent - SUB_BITS);
+		return low + width - 1 < 0 ? Long.MAX_VALUE : low + width - 1;
+	}
+
+}// end LatencyHistogram
@@ -0,0 +1,219 @@
+package ui;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads old 8_day_history.xml style files in a single streaming pass. Only
+ * the current day and spot matrix are ever held in memory, so files with
+ * years of history import in constant memory. Whitespace between elements is
+ * ignored, spotmatrix elements are matched to time slots by their time
+ * attribute (or their position if it is missing or unknown), and slots that
+ * aren't in the file are simply not stored. Days may come in any order.
+ * <p>
+ * The old code wrote dates as year-month-day with the month counted from 0,
+ * straight from Calendar.MONTH, so "2016-3-20" is the 20th of April. Only
+ * appendCurrentTime wrote real yyyy-MM-dd dates, which can be told apart by
+ * their zero padded month ("2016-04-20"). Days without a valid date, and the
+ * spot matrices in them, are skipped and counted.
+ *
+ * @version 1.0
+ */
+public class LegacyHistoryImporter {
+
+	/**
+	 * Receives every spot matrix found in the file.
+	 */
+	public interface Sink {
+		/**
+		 * @param day
+		 *            a day number, as from HistoryStore.dayOf()
+		 * @param slot
+		 *            the time slot
+		 * @param spots
+		 *            the spot states. Reused for the next record, so copy it
+		 *            if it has to be kept
+		 * @throws IOException
+		 *             if the record can't be stored
+		 */
+		void accept(long day, int slot, SpotBitSet spots) throws IOException;
+	}
+
+	private final HashMap<String, Integer> slots = new HashMap<String, Integer>();
+	private final int numSlots;
+	private final int numSpots;
+	private int skippedDays = 0;
+	private int skippedRecords = 0;
+
+	/**
+	 * @param timeOfDay
+	 *            the labels of the time slots, like "7:30 AM"
+	 * @param numSpots
+	 *            the number of spots in every record
+	 */
+	public LegacyHistoryImporter(String[] timeOfDay, int numSpots) {
+		for (int j = 0; j < timeOfDay.length; j++) {
+			slots.put(timeOfDay[j].toUpperCase(), j);
+		}
+		numSlots = timeOfDay.length;
+		this.numSpots = numSpots;
+	}
+
+	/**
+	 * Streams a history file into a sink.
+	 *
+	 * @param xmlFile
+	 *            an old style history file
+	 * @param sink
+	 *            where the records go
+	 * @return the number of records handed to the sink
+	 * @throws IOException
+	 *             if the file can't be read or isn't well-formed xml
+	 */
+	public int importFile(File xmlFile, Sink sink) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(xmlFile));
+		try {
+			return importStream(in, sink);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Streams history xml into a sink.
+	 *
+	 * @param in
+	 *            the xml
+	 * @param sink
+	 *            where the records go
+	 * @return the number of records handed to the sink
+	 * @throws IOException
+	 *             if the stream can't be read or isn't well-formed xml
+	 */
+	public int importStream(InputStream in, Sink sink) throws IOException {
+		SpotBitSet spots = new SpotBitSet(numSpots);
+		// -1 while outside a day or in a day without a valid date
+		long day = -1;
+		int position = 0;
+		int records = 0;
+		skippedDays = 0;
+		skippedRecords = 0;
+
+		try {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			// the history has no business pulling in outside entities
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			XMLStreamReader reader = factory.createXMLStreamReader(in);
+			try {
+				while (reader.hasNext()) {
+					if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+						continue;
+					}
+					String name = reader.getLocalName();
+					if ("day".equals(name)) {
+						day = parseDay(reader.getAttributeValue(null, "date"));
+						if (day < 0) {
+							skippedDays++;
+						}
+						position = 0;
+					} else if ("spotmatrix".equals(name)) {
+						if (day < 0) {
+							// nothing to file it under
+							reader.getElementText();
+							skippedRecords++;
+							continue;
+						}
+						int slot = slotOf(reader.getAttributeValue(null, "time"), position);
+						// reads the text and moves past the end tag
+						String text = reader.getElementText();
+						position++;
+						if (slot >= 0 && slot < numSlots) {
+							spots.setDigits(text);
+							sink.accept(day, slot, spots);
+							records++;
+						}
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("history xml could not be read", e);
+		}
+		return records;
+	}
+
+	/**
+	 * @return the number of days in the last file or stream imported that were
+	 *         skipped for not having a valid date
+	 */
+	public int getSkippedDays() {
+		return skippedDays;
+	}
+
+	/**
+	 * @return the number of spot matrices in the last file or stream imported
+	 *         that were skipped for not being in a day with a valid date
+	 */
+	public int getSkippedRecords() {
+		return skippedRecords;
+	}
+
+	/**
+	 * Reads a day's date attribute.
+	 *
+	 * @param date
+	 *            year-month-day, the month counted from 0 unless it is zero
+	 *            padded
+	 * @return the day number, or -1 if there is no valid date
+	 */
+	static long parseDay(String date) {
+		if (date == null) {
+			return -1;
+		}
+		String[] parts = date.trim().split("-");
+		if (parts.length != 3) {
+			return -1;
+		}
+		try {
+			int year = Integer.parseInt(parts[0]);
+			int month = Integer.parseInt(parts[1]);
+			int dayOfMonth = Integer.parseInt(parts[2]);
+			if (parts[1].length() == 2 && parts[1].charAt(0) == '0') {
+				month--;
+			}
+			GregorianCalendar cal = new GregorianCalendar(year, month, dayOfMonth);
+			// so "2016-12-1" or "2016-1-30" are rejected rather than rolled over
+			cal.setLenient(false);
+			return HistoryStore.dayOf(cal.getTimeInMillis());
+		} catch (IllegalArgumentException e) {
+			// also covers NumberFormatException
+			return -1;
+		}
+	}
+
+	/**
+	 * Finds the slot of a time label, falling back on the element's position
+	 * within its day.
+	 */
+	private int slotOf(String time, int position) {
+		if (time != null) {
+			Integer slot = slots.get(time.trim().toUpperCase());
+			if (slot != null) {
+				return slot;
+			}
+		}
+		return position;
+	}
+
+}// end LegacyHistoryImporter
@@ -0,0 +1,163 @@
+package ui;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for the whole app, by name. Hot paths look
+ * their metric up once, into a static final field, and after that counting is
+ * a LongAdder increment or a LatencyHistogram record. Everything is readable
+ * over JMX as the "ui:type=Metrics" MBean (jconsole, VisualVM), with every
+ * histogram showing up as count, mean, percentiles and max in microseconds.
+ *
+ * @version 1.0
+ */
+public final class Metrics {
+
+	/** the name everything is registered under in JMX */
+	public static final String OBJECT_NAME = "ui:type=Metrics";
+
+	private static final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+	private static final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	static {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new Exporter(), new ObjectName(OBJECT_NAME));
+		} catch (Exception e) {
+			// the metrics still work without JMX, they just can't be seen from outside
+			System.err.println("Error: the metrics could not be registered with JMX");
+			e.printStackTrace();
+		}
+	}
+
+	private Metrics() {
+	}
+
+	/**
+	 * @param name
+	 *            the name of the counter, like "camera.grab.errors"
+	 * @return the counter, made on first use
+	 */
+	public static LongAdder counter(String name) {
+		LongAdder c = counters.get(name);
+		if (c == null) {
+			LongAdder made = new LongAdder();
+			c = counters.putIfAbsent(name, made);
+			if (c == null) {
+				c = made;
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * @param name
+	 *            the name of the histogram, like "camera.grab"
+	 * @return the histogram, made on first use
+	 */
+	public static LatencyHistogram histogram(String name) {
+		LatencyHistogram h = histograms.get(name);
+		if (h == null) {
+			LatencyHistogram made = new LatencyHistogram();
+			h = histograms.putIfAbsent(name, made);
+			if (h == null) {
+				h = made;
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Reads every metric. Histograms are flattened into name.count,
+	 * name.mean_us, name.p50_us, name.p90_us, name.p99_us and name.max_us.
+	 *
+	 * @return every value, sorted by name
+	 */
+	public static Map<String, Number> values() {
+		TreeMap<String, Number> values = new TreeMap<String, Number>();
+		for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+			values.put(e.getKey(), e.getValue().sum());
+		}
+		for (Map.Entry<String, LatencyHistogram> e : histograms.entrySet()) {
+			LatencyHistogram h = e.getValue();
+			String name = e.getKey();
+			values.put(name + ".count", h.getCount());
+			values.put(name + ".mean_us", h.getMean() / 1000.0);
+			values.put(name + ".p50_us", h.getPercentile(0.50) / 1000.0);
+			values.put(name + ".p90_us", h.getPercentile(0.90) / 1000.0);
+			values.put(name + ".p99_us", h.getPercentile(0.99) / 1000.0);
+			values.put(name + ".max_us", h.getMax() / 1000.0);
+		}
+		return values;
+	}
+
+	/**
+	 * Shows every metric as a read-only JMX attribute. The attributes are
+	 * worked out on every call, since metrics keep appearing as the app runs.
+	 */
+	private static final class Exporter implements DynamicMBean {
+
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Number value = values().get(attribute);
+			if (value == null) {
+				throw new AttributeNotFoundException(attribute);
+			}
+			return value;
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			Map<String, Number> values = values();
+			AttributeList list = new AttributeList();
+			for (String name : attributes) {
+				Number value = values.get(name);
+				if (value != null) {
+					list.add(new Attribute(name, value));
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			throw new AttributeNotFoundException("metrics are read-only: " + attribute.getName());
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) {
+			throw new UnsupportedOperationException(actionName);
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			Map<String, Number> values = values();
+			MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+			int i = 0;
+			for (Map.Entry<String, Number> e : values.entrySet()) {
+				attributes[i++] = new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(), e.getKey(),
+						true, false, false);
+			}
+			return new MBeanInfo(Metrics.class.getName(), "Counters and latencies of the parking app", attributes,
+					null, new MBeanOperationInfo[0], null);
+		}
+	}
+
+}// end Metrics
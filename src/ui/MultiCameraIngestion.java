@@ -0,0 +1,221 @@
+package ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watches many cameras at once and keeps every camera's spot states in a
+ * shared registry. Every camera has its own FrameCapture reading the feed on
+ * a virtual thread, which keeps only the newest frame in its mailbox, so a
+ * live stream never backs up in the connection however slow the analysis is.
+ * A hundred cameras are a hundred virtual threads on the JDK's few carrier
+ * threads, not a hundred platform threads. The analysis runs on one small
+ * pool: every camera is a PeriodicTask there, and each run picks up the
+ * camera's newest frame, works out the spots and reports them.
+ * <p>
+ * ffmpeg reads the network in native code, which keeps a virtual thread on
+ * its carrier for as long as a grab waits for a frame. With many live
+ * streams, raise -Djdk.virtualThreadScheduler.parallelism so the feeds
+ * don't take turns.
+ *
+ * @version 1.0
+ */
+public class MultiCameraIngestion {
+
+	private final List<CameraSource> sources;
+	private final OccupancyRegistry registry;
+	private final int threads;
+	private final List<CameraWorker> workers = new ArrayList<CameraWorker>();
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Everything one camera needs between runs. A PeriodicTask never runs
+	 * twice at once, so none of it needs locking; the capture thread only
+	 * shares the mailbox.
+	 */
+	private final class CameraWorker implements Runnable {
+		private final CameraSource source;
+		private final PeriodicTask task;
+		private final FrameCapture capture;
+		private final OccupancyDetector detector;
+		private final SpotBitSet spots;
+		private long lastSequence = 0;
+
+		CameraWorker(CameraSource source) {
+			this.source = source;
+			task = new PeriodicTask(source.getId(), this, source.getFrequency());
+			// the feed is opened by the capture thread on its first grab, so this doesn't wait on the network
+			capture = new FrameCapture(source.getUrl(), FrameCapture.FEED_WIDTH, FrameCapture.FEED_HEIGHT);
+			capture.setAnalysisRegion(OccupancyDetector.boundingBox(source.getQuads()), true);
+			detector = new OccupancyDetector(source.getQuads());
+			spots = new SpotBitSet(detector.getNumSpots());
+		}
+
+		@Override
+		public void run() {
+			FrameMailbox mailbox = capture.getMailbox();
+			CapturedFrame frame = mailbox.acquire(lastSequence);
+			if (frame == null) {
+				// nothing new since the last run
+				return;
+			}
+			try {
+				lastSequence = frame.sequence;
+				if (detector.process(frame, spots)) {
+					registry.update(source.getId(), spots, frame.timestamp);
+				}
+			} finally {
+				mailbox.release(frame);
+			}
+		}
+	}
+
+	/**
+	 * @param sources
+	 *            the cameras to watch
+	 * @param registry
+	 *            where every camera's spot states go
+	 * @param threads
+	 *            the number of analysis threads shared by all cameras
+	 */
+	public MultiCameraIngestion(List<CameraSource> sources, OccupancyRegistry registry, int threads) {
+		this.sources = sources;
+		this.registry = registry;
+		this.threads = threads;
+	}
+
+	/**
+	 * Starts a grab thread for every camera and schedules the analysis. The
+	 * first runs are spread over a second so the cameras aren't all analysed
+	 * at the same moment.
+	 */
+	public synchronized void start() {
+		if (scheduler != null) {
+			System.out.println("Error: the cameras are already being watched");
+			return;
+		}
+		final AtomicInteger threadCount = new AtomicInteger();
+		scheduler = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "camera-thread-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (int i = 0; i < sources.size(); i++) {
+			CameraWorker worker = new CameraWorker(sources.get(i));
+			workers.add(worker);
+			worker.capture.startCapture("grab-" + worker.source.getId());
+			worker.task.start(scheduler, TimeUnit.SECONDS.toNanos(1) * i / sources.size());
+		}
+	}
+
+	/**
+	 * Stops the analysis, waits for runs in progress, then stops the grab
+	 * threads and closes the feeds.
+	 */
+	public synchronized void stop() {
+		if (scheduler == null) {
+			return;
+		}
+		for (CameraWorker worker : workers) {
+			worker.task.cancel();
+		}
+		scheduler.shutdown();
+		try {
+			if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+				System.out.println("Error: some cameras didn't stop in time");
+				scheduler.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			System.out.println("Error: interrupted while waiting for the cameras to stop");
+		}
+		for (CameraWorker worker : workers) {
+			worker.capture.close();
+			registry.remove(worker.source.getId());
+		}
+		workers.clear();
+		scheduler = null;
+	}
+
+	/**
+	 * @return the task of every camera, for their timing stats
+	 */
+	public synchronized List<PeriodicTask> getTasks() {
+		List<PeriodicTask> tasks = new ArrayList<PeriodicTask>();
+		for (CameraWorker worker : workers) {
+			tasks.add(worker.task);
+		}
+		return tasks;
+	}
+
+	/**
+	 * @return the capture of every camera, for their frame counts
+	 */
+	public synchronized List<FrameCapture> getCaptures() {
+		List<FrameCapture> captures = new ArrayList<FrameCapture>();
+		for (CameraWorker worker : workers) {
+			captures.add(worker.capture);
+		}
+		return captures;
+	}
+
+	/**
+	 * @return the registry the cameras report to
+	 */
+	public OccupancyRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Watches the cameras in a config file and prints how full each lot is
+	 * every ten seconds.
+	 *
+	 * @param args
+	 *            the config file (media/cameras.properties if left out) and
+	 *            optionally the number of analysis threads
+	 */
+	public static void main(String[] args) {
+		File config = new File(args.length > 0 ? args[0] : "media/cameras.properties");
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		List<CameraSource> sources;
+		try {
+			sources = CameraSource.load(config);
+		} catch (IOException e) {
+			System.err.println("Error: the camera list could not be read");
+			e.printStackTrace();
+			return;
+		}
+
+		final MultiCameraIngestion ingestion = new MultiCameraIngestion(sources, new OccupancyRegistry(), threads);
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {ingestion.stop();}
+		}));
+		ingestion.start();
+		System.out.println("Watching " + sources.size() + " cameras, analysed on " + threads + " threads");
+
+		while (true) {
+			try {
+				Thread.sleep(10000);
+			} catch (InterruptedException e) {
+				return;
+			}
+			OccupancyRegistry registry = ingestion.getRegistry();
+			for (String id : registry.getIds()) {
+				OccupancySnapshot r = registry.get(id);
+				System.out.println(id + ": " + r.getOpen() + "/" + r.getNumSpots() + " open");
+			}
+			System.out.println("total: " + registry.getTotalOpen() + "/" + registry.getTotalSpots() + " open");
+		}
+	}
+
+}// end MultiCameraIngestion
@@ -0,0 +1,160 @@
+package ui;
+
+/**
+ * Running statistics of how full the lot is, per day of the week and time
+ * slot. Every cell keeps a histogram of whole percentages, so mean, min, max
+ * and percentiles are all answered from at most 101 buckets, and a sample can
+ * be taken back out again when the slot it came from is overwritten.
+ *
+ * @version 1.0
+ */
+public class OccupancyAggregates {
+
+	private static final int BUCKETS = 101; // 0% to 100%
+
+	private final int slots;
+	// [weekday][slot][percent]
+	private final int[][][] histogram;
+	private final int[][] samples;
+	private final long[][] sums;
+
+	/**
+	 * @param slots
+	 *            the number of time slots in a day
+	 */
+	public OccupancyAggregates(int slots) {
+		this.slots = slots;
+		histogram = new int[7][slots][BUCKETS];
+		samples = new int[7][slots];
+		sums = new long[7][slots];
+	}
+
+	/**
+	 * Works out the day of the week of a day number.
+	 *
+	 * @param day
+	 *            a day number from HistoryStore.dayOf()
+	 * @return 0 for Sunday up to 6 for Saturday
+	 */
+	public static int weekdayOf(long day) {
+		// 1970-01-01 was a Thursday
+		return (int) Math.floorMod(day + 4, 7L);
+	}
+
+	/**
+	 * Counts one sample.
+	 *
+	 * @param weekday
+	 *            0 for Sunday up to 6 for Saturday
+	 * @param slot
+	 *            the time slot
+	 * @param percent
+	 *            how full the lot was, 0 to 100
+	 */
+	public synchronized void add(int weekday, int slot, int percent) {
+		int p = clamp(percent);
+		histogram[weekday][slot][p]++;
+		samples[weekday][slot]++;
+		sums[weekday][slot] += p;
+	}
+
+	/**
+	 * Takes back a sample that was counted before, for when a slot is
+	 * overwritten.
+	 *
+	 * @param weekday
+	 *            0 for Sunday up to 6 for Saturday
+	 * @param slot
+	 *            the time slot
+	 * @param percent
+	 *            the percentage that was counted
+	 */
+	public synchronized void remove(int weekday, int slot, int percent) {
+		int p = clamp(percent);
+		if (histogram[weekday][slot][p] > 0) {
+			histogram[weekday][slot][p]--;
+			samples[weekday][slot]--;
+			sums[weekday][slot] -= p;
+		}
+	}
+
+	/**
+	 * @return the number of samples counted for a weekday and slot
+	 */
+	public synchronized int getSamples(int weekday, int slot) {
+		return samples[weekday][slot];
+	}
+
+	/**
+	 * @return the mean percentage full for a weekday and slot, 0 without samples
+	 */
+	public synchronized double getMean(int weekday, int slot) {
+		int n = samples[weekday][slot];
+		return n == 0 ? 0 : (double) sums[weekday][slot] / n;
+	}
+
+	/**
+	 * @return the lowest percentage full seen for a weekday and slot, 0 without samples
+	 */
+	public synchronized int getMin(int weekday, int slot) {
+		int[] h = histogram[weekday][slot];
+		for (int p = 0; p < BUCKETS; p++) {
+			if (h[p] > 0) {
+				return p;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the highest percentage full seen for a weekday and slot, 0 without samples
+	 */
+	public synchronized int getMax(int weekday, int slot) {
+		int[] h = histogram[weekday][slot];
+		for (int p = BUCKETS - 1; p >= 0; p--) {
+			if (h[p] > 0) {
+				return p;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param weekday
+	 *            0 for Sunday up to 6 for Saturday
+	 * @param slot
+	 *            the time slot
+	 * @param fraction
+	 *            which percentile, 0.5 for the median
+	 * @return the smallest percentage full that at least that fraction of the
+	 *         samples is at or below, 0 without samples
+	 */
+	public synchronized int getPercentile(int weekday, int slot, double fraction) {
+		int n = samples[weekday][slot];
+		if (n == 0) {
+			return 0;
+		}
+		long needed = (long) Math.ceil(fraction * n);
+		int[] h = histogram[weekday][slot];
+		long seen = 0;
+		for (int p = 0; p < BUCKETS; p++) {
+			seen += h[p];
+			if (seen >= needed && seen > 0) {
+				return p;
+			}
+		}
+		return BUCKETS - 1;
+	}
+
+	/**
+	 * @return the number of time slots in a day
+	 */
+	public int getSlots() {
+		return slots;
+	}
+
+	private static int clamp(int percent) {
+		return Math.max(0, Math.min(BUCKETS - 1, percent));
+	}
+
+}// end OccupancyAggregates
@@ -0,0 +1,570 @@
+package ui;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decides which spots are taken by looking at the camera pixels inside each
+ * spot. The pixels belonging to every spot are worked out once, after that a
+ * frame only costs one pass over those pixels. Each spot's mean brightness and
+ * variance is compared with a baseline that is learned from the first frames
+ * (the lot is assumed to be empty then) and kept up to date while a spot
+ * stays empty. When the spots cover a lot of pixels, as with a high
+ * resolution camera over a big lot, the measuring can be split across a
+ * ForkJoinPool (see setParallelThreshold); that is off unless asked for.
+ * <p>
+ * Most of the time nothing in a lot moves, so before measuring, a change gate
+ * compares a sparse grid of each spot's pixels with the frame the spot was
+ * last classified on. Only spots that changed (or haven't been looked at
+ * properly for a while) are measured and classified; the rest keep their
+ * state.
+ *
+ * @version 1.0
+ */
+public class OccupancyDetector {
+
+	/** the size of the pane that the spot coordinates were measured on */
+	public static final int LAYOUT_WIDTH = 800;
+	public static final int LAYOUT_HEIGHT = 500;
+
+	private final int[][] quads;
+	private final int numSpots;
+
+	// the pixels of every spot, as offsets into a frame: spot k owns
+	// maskPixels[maskStart[k]] up to maskPixels[maskStart[k+1]]
+	private int[] maskPixels = new int[0];
+	private final int[] maskStart;
+	private int maskWidth = -1;
+	private int maskHeight = -1;
+	private int maskSourceWidth = -1;
+	private int maskSourceHeight = -1;
+	private int maskOriginX = -1;
+	private int maskOriginY = -1;
+
+	// per spot statistics of the current frame
+	private final double[] mean;
+	private final double[] stdDev;
+	// how far each spot was from its baseline when last classified, in
+	// thresholds: above 1 the spot counts as taken
+	private final double[] score;
+
+	// what each spot looks like empty
+	private final double[] baseMean;
+	private final double[] baseStdDev;
+	private int calibrationFrames = 20;
+	private int framesSeen = 0;
+
+	// how far a spot may drift from its baseline before it counts as taken
+	private double meanThreshold = 28;
+	private double stdDevThreshold = 14;
+	// how quickly the baseline of an empty spot follows changes in lighting
+	private double adaptRate = 0.02;
+
+	// measuring is split up when the spots hold at least this many pixels in
+	// total, which is never unless setParallelThreshold says otherwise...
+	private int parallelThreshold = Integer.MAX_VALUE;
+	// ...into pieces of about this many pixels
+	private static final int LEAF_PIXELS = 32768;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	// change gate: the spot pixels on a grid gateStride pixels apart are
+	// compared with the frame the spot was last classified on. Spot k's
+	// samples are gatePixels[gateStart[k]] up to gatePixels[gateStart[k+1]],
+	// and gateRef holds their brightness back then.
+	private int gateStride = 4;
+	// mean brightness difference of the samples that counts as a change
+	private double gateThreshold = 6;
+	// a spot is classified at least this often, so the baseline keeps up with the light
+	private int refreshFrames = 50;
+	private int[] gatePixels = new int[0];
+	private byte[] gateRef = new byte[0];
+	private final int[] gateStart;
+	private boolean gateReady = false;
+	// which spots get measured this frame, and how long since each one was
+	private final boolean[] dirty;
+	private final int[] sinceClassified;
+	private int dirtyPixels = 0;
+	private long spotsClassified = 0;
+	private long spotsSkipped = 0;
+
+	/**
+	 * @param quads
+	 *            one {x0,y0,x1,y1,x2,y2,x3,y3} quad per spot, in layout
+	 *            coordinates (see SpotLayout.getSpotQuads())
+	 */
+	public OccupancyDetector(int[][] quads) {
+		this.quads = quads;
+		numSpots = quads.length;
+		maskStart = new int[numSpots + 1];
+		mean = new double[numSpots];
+		stdDev = new double[numSpots];
+		score = new double[numSpots];
+		baseMean = new double[numSpots];
+		baseStdDev = new double[numSpots];
+		gateStart = new int[numSpots + 1];
+		dirty = new boolean[numSpots];
+		sinceClassified = new int[numSpots];
+	}
+
+	/**
+	 * Works out the spot states for one frame.
+	 *
+	 * @param frame
+	 *            a frame from the capture thread
+	 * @param spots
+	 *            receives the state of every spot: set for an open spot, like
+	 *            the spot arrays MATLAB pushes in and the UI paints. Spots the
+	 *            change gate lets through are left as they are, so the same
+	 *            set should be passed in every frame
+	 * @return false while the baseline is still being learned, in which case
+	 *         spots is left alone
+	 */
+	public boolean process(CapturedFrame frame, SpotBitSet spots) {
+		if (frame.width != maskWidth || frame.height != maskHeight || frame.sourceWidth != maskSourceWidth
+				|| frame.sourceHeight != maskSourceHeight || frame.originX != maskOriginX
+				|| frame.originY != maskOriginY) {
+			buildMasks(frame);
+		}
+
+		if (framesSeen < calibrationFrames) {
+			Arrays.fill(dirty, true);
+			dirtyPixels = maskStart[numSpots];
+			measure(frame);
+			// running average of the stats while calibrating
+			framesSeen++;
+			for (int k = 0; k < numSpots; k++) {
+				baseMean[k] += (mean[k] - baseMean[k]) / framesSeen;
+				baseStdDev[k] += (stdDev[k] - baseStdDev[k]) / framesSeen;
+			}
+			return false;
+		}
+
+		boolean gate = gateReady && gateStride > 0;
+		dirtyPixels = 0;
+		for (int k = 0; k < numSpots; k++) {
+			dirty[k] = !gate || sinceClassified[k] >= refreshFrames || changed(frame.data, frame.channels, k);
+			if (dirty[k]) {
+				dirtyPixels += maskStart[k + 1] - maskStart[k];
+			}
+		}
+		measure(frame);
+
+		for (int k = 0; k < numSpots && k < spots.size(); k++) {
+			if (!dirty[k]) {
+				sinceClassified[k]++;
+				spotsSkipped++;
+				continue;
+			}
+			score[k] = Math.max(Math.abs(mean[k] - baseMean[k]) / meanThreshold,
+					(stdDev[k] - baseStdDev[k]) / stdDevThreshold);
+			boolean taken = score[k] > 1;
+			if (!taken) {
+				baseMean[k] += (mean[k] - baseMean[k]) * adaptRate;
+				baseStdDev[k] += (stdDev[k] - baseStdDev[k]) * adaptRate;
+			}
+			spots.set(k, !taken);
+			if (gateStride > 0) {
+				remember(frame.data, frame.channels, k);
+			}
+			// after a full pass, spread the forced refreshes out instead of doing them all in one frame
+			sinceClassified[k] = gate ? 0 : k % refreshFrames;
+			spotsClassified++;
+		}
+		gateReady = gateStride > 0;
+		return true;
+	}
+
+	/**
+	 * Compares the gate samples of a spot with the frame it was last
+	 * classified on.
+	 *
+	 * @return true if they differ by more than the gate threshold on average
+	 */
+	private boolean changed(byte[] data, int channels, int k) {
+		final int[] pixels = gatePixels;
+		final byte[] ref = gateRef;
+		int end = gateStart[k + 1];
+		long diff = 0;
+		for (int r = gateStart[k]; r < end; r++) {
+			diff += Math.abs(luma(data, pixels[r] * channels, channels) - (ref[r] & 0xFF));
+		}
+		return diff > gateThreshold * (end - gateStart[k]);
+	}
+
+	/**
+	 * Keeps the gate samples of a spot from the current frame, for comparing
+	 * the next frames with.
+	 */
+	private void remember(byte[] data, int channels, int k) {
+		final int[] pixels = gatePixels;
+		int end = gateStart[k + 1];
+		for (int r = gateStart[k]; r < end; r++) {
+			gateRef[r] = (byte) luma(data, pixels[r] * channels, channels);
+		}
+	}
+
+	/**
+	 * Lays out the gate samples to match the current masks. The gate stays
+	 * closed until every spot has been classified once more.
+	 */
+	private void buildGate() {
+		gateReady = false;
+		if (gateStride <= 0) {
+			gatePixels = new int[0];
+			gateRef = new byte[0];
+			return;
+		}
+		// a grid rather than every n-th mask pixel, so whole rows of the frame are never touched
+		int[] samples = new int[maskPixels.length];
+		int at = 0;
+		for (int k = 0; k < numSpots; k++) {
+			gateStart[k] = at;
+			for (int p = maskStart[k]; p < maskStart[k + 1]; p++) {
+				int offset = maskPixels[p];
+				if ((offset / maskWidth) % gateStride == 0 && (offset % maskWidth) % gateStride == 0) {
+					samples[at++] = offset;
+				}
+			}
+			if (at == gateStart[k] && maskStart[k + 1] > maskStart[k]) {
+				// too small to hit the grid, so it gets a sample of its own
+				samples[at++] = maskPixels[maskStart[k]];
+			}
+		}
+		gateStart[numSpots] = at;
+		gatePixels = Arrays.copyOf(samples, at);
+		gateRef = new byte[at];
+	}
+
+	/**
+	 * Throws away the learned baseline. The next few frames are used to learn
+	 * a new one, so this should be called while the lot is empty.
+	 */
+	public void recalibrate() {
+		framesSeen = 0;
+		gateReady = false;
+		for (int k = 0; k < numSpots; k++) {
+			baseMean[k] = 0;
+			baseStdDev[k] = 0;
+		}
+	}
+
+	/**
+	 * Copies out how sure the detector is about each spot, for filtering the
+	 * states over several frames (see SpotFilter). A score is how far the
+	 * spot was from its empty baseline the last time it was classified,
+	 * measured in thresholds, so a spot above 1 is taken and one near 0 is
+	 * clearly empty. Spots the change gate lets through keep their score.
+	 *
+	 * @param scores
+	 *            receives one score per spot
+	 */
+	public void getScores(double[] scores) {
+		System.arraycopy(score, 0, scores, 0, Math.min(numSpots, scores.length));
+	}
+
+	/**
+	 * @return the number of spots this detector looks at
+	 */
+	public int getNumSpots() {
+		return numSpots;
+	}
+
+	/**
+	 * Sets how many frames are averaged into the baseline after a
+	 * (re)calibration.
+	 *
+	 * @param frames
+	 *            a number of frames, at least 1
+	 */
+	public void setCalibrationFrames(int frames) {
+		calibrationFrames = Math.max(1, frames);
+	}
+
+	/**
+	 * Sets how sensitive the detector is.
+	 *
+	 * @param meanThreshold
+	 *            the change in mean brightness (0-255) that marks a spot taken
+	 * @param stdDevThreshold
+	 *            the rise in brightness deviation that marks a spot taken
+	 */
+	public void setThresholds(double meanThreshold, double stdDevThreshold) {
+		this.meanThreshold = meanThreshold;
+		this.stdDevThreshold = stdDevThreshold;
+	}
+
+	/**
+	 * Sets up the change gate.
+	 *
+	 * @param stride
+	 *            compare the spot pixels on a grid this many pixels apart, 0
+	 *            to turn the gate off and classify every spot every frame
+	 * @param threshold
+	 *            the mean brightness difference (0-255) of the compared
+	 *            pixels that counts as a change
+	 * @param refreshFrames
+	 *            classify every spot at least once in this many frames,
+	 *            changed or not
+	 */
+	public void setChangeGate(int stride, double threshold, int refreshFrames) {
+		gateStride = Math.max(0, stride);
+		gateThreshold = threshold;
+		this.refreshFrames = Math.max(1, refreshFrames);
+		if (maskWidth >= 0) {
+			buildGate();
+		}
+	}
+
+	/**
+	 * @return the number of times a spot was measured and classified
+	 */
+	public long getSpotsClassified() {
+		return spotsClassified;
+	}
+
+	/**
+	 * @return the number of times the change gate kept a spot's old state
+	 */
+	public long getSpotsSkipped() {
+		return spotsSkipped;
+	}
+
+	/**
+	 * Sets the pool that big frames are measured on.
+	 *
+	 * @param pool
+	 *            a pool, or null to always measure on the calling thread
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Turns on splitting the measuring across the pool for frames with at
+	 * least this many spot pixels. It is off by default: on a small lot, or a
+	 * box with few cores, the hand-off costs more than it saves. Around
+	 * 200000 pixels is where it starts to pay off on a 4 core machine.
+	 *
+	 * @param pixels
+	 *            a number of pixels, 0 to always split, Integer.MAX_VALUE to
+	 *            never split
+	 */
+	public void setParallelThreshold(int pixels) {
+		parallelThreshold = pixels;
+	}
+
+	/**
+	 * @return the number of pixels looked at per frame, as of the last frame
+	 */
+	public int getMaskPixels() {
+		return maskStart[numSpots];
+	}
+
+	/**
+	 * Fills mean and stdDev with the brightness statistics of every spot.
+	 */
+	private void measure(CapturedFrame frame) {
+		if (pool == null || dirtyPixels < parallelThreshold || numSpots < 2) {
+			measure(frame.data, frame.channels, 0, numSpots);
+		} else {
+			pool.invoke(new MeasureTask(frame.data, frame.channels, 0, numSpots));
+		}
+	}
+
+	/**
+	 * Measures a run of spots. Every spot is measured by exactly one task and
+	 * only writes its own slots of mean and stdDev, so the tasks share nothing.
+	 */
+	private final class MeasureTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final byte[] data;
+		private final int channels;
+		private final int from;
+		private final int to;
+
+		MeasureTask(byte[] data, int channels, int from, int to) {
+			this.data = data;
+			this.channels = channels;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from < 2 || maskStart[to] - maskStart[from] <= LEAF_PIXELS) {
+				measure(data, channels, from, to);
+				return;
+			}
+			// split where half the pixels are on either side, spots differ a lot in size
+			int mid = splitPoint(from, to);
+			invokeAll(new MeasureTask(data, channels, from, mid), new MeasureTask(data, channels, mid, to));
+		}
+	}
+
+	/**
+	 * @return the spot between from and to (exclusive at both ends) that
+	 *         splits their pixels most evenly
+	 */
+	private int splitPoint(int from, int to) {
+		int half = (maskStart[from] + maskStart[to]) >>> 1;
+		int lo = from + 1;
+		int hi = to - 1;
+		while (lo < hi) {
+			int m = (lo + hi) >>> 1;
+			if (maskStart[m] < half) {
+				lo = m + 1;
+			} else {
+				hi = m;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Fills mean and stdDev for spots from up to (not including) to.
+	 */
+	private void measure(byte[] data, int channels, int from, int to) {
+		final int[] pixels = maskPixels;
+
+		for (int k = from; k < to; k++) {
+			if (!dirty[k]) {
+				continue;
+			}
+			long sum = 0;
+			long sumSq = 0;
+			int start = maskStart[k];
+			int end = maskStart[k + 1];
+			for (int p = start; p < end; p++) {
+				int l = luma(data, pixels[p] * channels, channels);
+				sum += l;
+				sumSq += l * l;
+			}
+			int n = end - start;
+			if (n == 0) {
+				mean[k] = 0;
+				stdDev[k] = 0;
+			} else {
+				double m = (double) sum / n;
+				mean[k] = m;
+				stdDev[k] = Math.sqrt(Math.max(0, (double) sumSq / n - m * m));
+			}
+		}
+	}
+
+	/**
+	 * Approximate brightness of one pixel, 0-255. Works for BGRA, BGR and gray.
+	 */
+	static int luma(byte[] data, int i, int channels) {
+		if (channels < 3) {
+			return data[i] & 0xFF;
+		}
+		// integer version of 0.114 B + 0.587 G + 0.299 R
+		return ((data[i] & 0xFF) * 29 + (data[i + 1] & 0xFF) * 150 + (data[i + 2] & 0xFF) * 77) >> 8;
+	}
+
+	/**
+	 * Works out the smallest rectangle that holds every spot.
+	 *
+	 * @param quads
+	 *            one quad per spot, as from SpotLayout.getSpotQuads()
+	 * @return {x, y, width, height} in layout coordinates
+	 */
+	public static int[] boundingBox(int[][] quads) {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (int[] quad : quads) {
+			for (int c = 0; c < 4; c++) {
+				minX = Math.min(minX, quad[2 * c]);
+				maxX = Math.max(maxX, quad[2 * c]);
+				minY = Math.min(minY, quad[2 * c + 1]);
+				maxY = Math.max(maxY, quad[2 * c + 1]);
+			}
+		}
+		return new int[] { minX, minY, maxX - minX, maxY - minY };
+	}
+
+	/**
+	 * Rasterizes every spot quad, scaled to the full frame size, into a list
+	 * of pixel offsets relative to the (possibly cropped) frame data.
+	 */
+	private void buildMasks(CapturedFrame frame) {
+		int sourceWidth = frame.sourceWidth > 0 ? frame.sourceWidth : frame.width;
+		int sourceHeight = frame.sourceHeight > 0 ? frame.sourceHeight : frame.height;
+		double sx = (double) sourceWidth / LAYOUT_WIDTH;
+		double sy = (double) sourceHeight / LAYOUT_HEIGHT;
+		int[] crop = { frame.originX, frame.originY, frame.width, frame.height };
+
+		// first pass counts, second pass fills, so the mask is one flat array
+		int total = 0;
+		for (int k = 0; k < numSpots; k++) {
+			total += rasterize(quads[k], sx, sy, crop, null, 0);
+		}
+		maskPixels = new int[total];
+		int at = 0;
+		for (int k = 0; k < numSpots; k++) {
+			maskStart[k] = at;
+			at += rasterize(quads[k], sx, sy, crop, maskPixels, at);
+		}
+		maskStart[numSpots] = at;
+		maskWidth = frame.width;
+		maskHeight = frame.height;
+		maskSourceWidth = frame.sourceWidth;
+		maskSourceHeight = frame.sourceHeight;
+		maskOriginX = frame.originX;
+		maskOriginY = frame.originY;
+		buildGate();
+	}
+
+	/**
+	 * Finds the pixels whose centres lie inside a quad.
+	 *
+	 * @return the number of pixels found
+	 */
+	private static int rasterize(int[] quad, double sx, double sy, int[] crop, int[] out, int at) {
+		double[] xs = new double[4];
+		double[] ys = new double[4];
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int c = 0; c < 4; c++) {
+			xs[c] = quad[2 * c] * sx;
+			ys[c] = quad[2 * c + 1] * sy;
+			minX = Math.min(minX, xs[c]);
+			maxX = Math.max(maxX, xs[c]);
+			minY = Math.min(minY, ys[c]);
+			maxY = Math.max(maxY, ys[c]);
+		}
+
+		// only pixels that made it into the (cropped) frame can be looked at
+		int x0 = Math.max(crop[0], (int) Math.floor(minX));
+		int x1 = Math.min(crop[0] + crop[2] - 1, (int) Math.ceil(maxX));
+		int y0 = Math.max(crop[1], (int) Math.floor(minY));
+		int y1 = Math.min(crop[1] + crop[3] - 1, (int) Math.ceil(maxY));
+
+		int count = 0;
+		for (int y = y0; y <= y1; y++) {
+			for (int x = x0; x <= x1; x++) {
+				if (inside(xs, ys, x + 0.5, y + 0.5)) {
+					if (out != null) {
+						out[at + count] = (y - crop[1]) * crop[2] + (x - crop[0]);
+					}
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Even-odd point in polygon test, which also copes with quads whose
+	 * corners are not in a consistent winding order.
+	 */
+	private static boolean inside(double[] xs, double[] ys, double px, double py) {
+		boolean in = false;
+		for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+			if ((ys[i] > py) != (ys[j] > py) && px < (xs[j] - xs[i]) * (py - ys[i]) / (ys[j] - ys[i]) + xs[i]) {
+				in = !in;
+			}
+		}
+		return in;
+	}
+
+}// end OccupancyDetector
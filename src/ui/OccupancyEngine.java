@@ -0,0 +1,490 @@
+package ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Capture, detection and history, without any UI. Frames come from a
+ * FrameCapture, the detector (or a spot file written by another process)
+ * works out the spot states, they are published as snapshots, and once per
+ * time slot a sample goes into the history. Every spot that flips also goes
+ * out on a change stream, which the change log and the server follow.
+ * Nothing here touches JavaFX, so
+ * the engine runs on a box without a screen or the FX toolkit; the
+ * ProcessingManager puts the UI on top of it.
+ * <p>
+ * Run on its own (see main) it is the headless occupancy service for a
+ * small box next to a camera.
+ *
+ * @version 1.0
+ */
+public class OccupancyEngine {
+
+	//how often the history sampler checks whether a new time slot has started
+	private static final double historyCheckFreq = 1.0 / 60;
+	//how often followers of the change stream get the whole lot again
+	private static final double keyframeFreq = 1.0 / 60;
+	private static final LatencyHistogram detectTime = Metrics.histogram("detector.process");
+
+	private final FrameCapture capture;
+	private final HistoryHandler history;
+	//the latest spot states, from MATLAB or the detector, handed to everyone else without locks
+	private final OccupancyPublisher publisher = new OccupancyPublisher();
+	//the same states as spot changes, for followers that only want to hear what flipped
+	private final SpotChangeStream changes = new SpotChangeStream();
+	private volatile double detectionFreq = 1;
+
+	//what works out the spot states from the frames, if anything does
+	private OccupancyDetector detector;
+	//what the detector writes into, frame by frame
+	private SpotBitSet rawBits;
+	private double[] scores;
+	//holds back flickers, so only states that last make it into spotBits and get published
+	private SpotFilter filter;
+	private SpotBitSet spotBits;
+	private long lastDetectedSequence = 0;
+	//spot states written by another process into a memory-mapped file, if followed
+	private volatile SharedSpotReader spotFile;
+
+	//every stage of the pipeline runs on its own schedule on these threads; capture has a thread of its own
+	private ScheduledExecutorService scheduler;
+	private final List<PeriodicTask> tasks = new ArrayList<PeriodicTask>();
+	//guards starting and stopping
+	private final Object lifecycle = new Object();
+	private long lastSampledDay = -1;
+	private int lastSampledSlot = -1;
+	private SpotBitSet historySample;
+
+	/**
+	 * @param capture
+	 *            where frames come from, or null if the spot states are
+	 *            pushed in or read from a spot file
+	 * @param history
+	 *            where the spot states are sampled into
+	 */
+	public OccupancyEngine(FrameCapture capture, HistoryHandler history) {
+		this.capture = capture;
+		this.history = history;
+		if (history != null) {
+			changes.addListener(history.getChangeLog());
+		}
+	}
+
+	/**
+	 * Works out the spot states from the captured frames. Must be called
+	 * before start(). Tuned from the same system properties wherever the
+	 * engine runs, with or without the UI: -Dparking.filter.frames=n sets how
+	 * many detection runs a spot has to look different for before it changes
+	 * (3), and with -Dparking.detect.parallel=pixels, frames with at least
+	 * that many spot pixels are measured on several threads.
+	 *
+	 * @param quads
+	 *            one {x0,y0,x1,y1,x2,y2,x3,y3} quad per spot, as from
+	 *            SpotLayout.getSpotQuads()
+	 */
+	public void detectWith(int[][] quads) {
+		if (history != null && quads.length != history.numSpots) {
+			throw new IllegalArgumentException(
+					"the lot has " + quads.length + " spots but the history keeps " + history.numSpots);
+		}
+		detector = new OccupancyDetector(quads);
+		int parallelPixels = Integer.getInteger("parking.detect.parallel", -1);
+		if (parallelPixels >= 0) {
+			detector.setParallelThreshold(parallelPixels);
+		}
+		rawBits = new SpotBitSet(detector.getNumSpots());
+		scores = new double[detector.getNumSpots()];
+		filter = new SpotFilter(detector.getNumSpots());
+		filter.setConfirmFrames(Integer.getInteger("parking.filter.frames", 3));
+		spotBits = new SpotBitSet(detector.getNumSpots());
+	}
+
+	/**
+	 * @return the filter between the detector and publishing, to tune how
+	 *         long a change has to last, or null if nothing is detected here
+	 */
+	public SpotFilter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Takes the spot states from a memory-mapped file that another process,
+	 * such as MATLAB, writes (see SharedSpotWriter). Must be called before
+	 * start().
+	 *
+	 * @param file
+	 *            the spot file, which doesn't have to exist yet
+	 */
+	public void followSpotFile(File file) {
+		spotFile = new SharedSpotReader(file);
+	}
+
+	/**
+	 * Sets how often the detector or the spot file is looked at. Takes effect
+	 * on the next start().
+	 *
+	 * @param frequency
+	 *            runs per second
+	 */
+	public void setDetectionFrequency(double frequency) {
+		detectionFreq = frequency;
+	}
+
+	/**
+	 * Starts capture and schedules every stage at its own rate.
+	 */
+	public void start() {
+		synchronized (lifecycle) {
+			if (scheduler != null) {
+				System.out.println(
+						"Error: The processing pipeline failed to initialize. This was likely caused by the presence of a pre-existing pipeline");
+				return;
+			}
+
+			if (capture != null) {
+				capture.startCapture();
+			}
+			final AtomicInteger threadCount = new AtomicInteger();
+			scheduler = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "proc-thread-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+			//work out the spot states from the newest frame if nobody pushes them in
+			if (detector != null && capture != null) {
+				addTask(new PeriodicTask("detection", new Runnable() {
+					@Override
+					public void run() {detectSpots();}
+				}, detectionFreq));
+			}
+			//or pick them up from another process
+			if (spotFile != null) {
+				addTask(new PeriodicTask("spot-file", new Runnable() {
+					@Override
+					public void run() {pollSpotFile();}
+				}, detectionFreq));
+			}
+			addTask(new PeriodicTask("history", new Runnable() {
+				@Override
+				public void run() {sampleHistory();}
+			}, historyCheckFreq));
+			addTask(new PeriodicTask("keyframes", new Runnable() {
+				@Override
+				public void run() {changes.keyframe();}
+			}, keyframeFreq));
+		}
+	}
+
+	/**
+	 * Cancels every stage, waits for the ones that are running to finish and
+	 * stops capture.
+	 */
+	public void stop() {
+		synchronized (lifecycle) {
+			if (scheduler == null) {
+				return;
+			}
+
+			for (PeriodicTask task : tasks) {
+				task.cancel();
+			}
+			scheduler.shutdown();
+			try {
+				if (!scheduler.awaitTermination(1, TimeUnit.SECONDS)) {
+					System.out.println("Error: the processing tasks didn't stop in time. Try harder next time.");
+					scheduler.shutdownNow();
+				}
+			} catch (InterruptedException e) {
+				System.out.println("Error: The thread was interrupted when trying to finish execution. How rude.");
+				e.printStackTrace();
+			}
+
+			if (capture != null) {
+				capture.stopCapture();
+			}
+			if (spotFile != null) {
+				spotFile.close();
+			}
+			for (PeriodicTask task : tasks) {
+				System.out.println(task);
+			}
+			tasks.clear();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * @return true between start() and stop()
+	 */
+	public boolean isRunning() {
+		synchronized (lifecycle) {
+			return scheduler != null;
+		}
+	}
+
+	/**
+	 * Runs another stage alongside the engine's own, such as the ones that
+	 * feed a UI. It is stopped along with the rest.
+	 *
+	 * @param task
+	 *            the stage to run
+	 * @return false if the engine isn't running, in which case nothing is
+	 *         scheduled
+	 */
+	boolean schedule(PeriodicTask task) {
+		synchronized (lifecycle) {
+			if (scheduler == null) {
+				return false;
+			}
+			addTask(task);
+			return true;
+		}
+	}
+
+	private void addTask(PeriodicTask task) {
+		tasks.add(task);
+		task.start(scheduler, 0);
+	}
+
+	/**
+	 * @return the stages of the pipeline that are running, for their timing stats
+	 */
+	public List<PeriodicTask> getTasks() {
+		synchronized (lifecycle) {
+			return Collections.unmodifiableList(new ArrayList<PeriodicTask>(tasks));
+		}
+	}
+
+	/**
+	 * Adds the current spot states to the history once per time slot. The
+	 * live states mark open spots while the history marks full ones, so they
+	 * are flipped on the way in. A lot with a different number of spots than
+	 * the history keeps is refused rather than cut to fit.
+	 */
+	private void sampleHistory() {
+		OccupancySnapshot live = publisher.get();
+		if (live == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long day = HistoryStore.dayOf(now);
+		int slot = history.slotOf(now);
+		if (slot < 0 || (day == lastSampledDay && slot == lastSampledSlot)) {
+			return;
+		}
+
+		if (live.getNumSpots() != history.numSpots) {
+			// cutting the lot down or padding it would store wrong percentages for good
+			throw new IllegalStateException(
+					"the lot has " + live.getNumSpots() + " spots but the history keeps " + history.numSpots);
+		}
+		if (historySample == null) {
+			historySample = new SpotBitSet(history.numSpots);
+		}
+		historySample.clear();
+		for (int i = 0; i < live.getNumSpots(); i++) {
+			historySample.set(i, !live.isOpen(i));
+		}
+		history.appendCurrentTime(historySample);
+		lastSampledDay = day;
+		lastSampledSlot = slot;
+	}
+
+	/**
+	 * Runs the occupancy detector on the newest captured frame, if there is
+	 * one that hasn't been looked at yet, and publishes the spots whose new
+	 * state the filter has confirmed.
+	 */
+	private void detectSpots() {
+		FrameMailbox mailbox = capture.getMailbox();
+		CapturedFrame frame = mailbox.acquire(lastDetectedSequence);
+		if (frame == null) {
+			return;
+		}
+		try {
+			lastDetectedSequence = frame.sequence;
+			long start = System.nanoTime();
+			boolean ready = detector.process(frame, rawBits);
+			detectTime.recordSince(start);
+			if (ready) {
+				detector.getScores(scores);
+				if (filter.update(scores, spotBits) > 0) {
+					changes.offer(publisher.publish(spotBits, frame.timestamp));
+				}
+			}
+		} finally {
+			mailbox.release(frame);
+		}
+	}
+
+	/**
+	 * Publishes the spot file's states if they changed since the last poll.
+	 */
+	private void pollSpotFile() {
+		SharedSpotReader reader = spotFile;
+		try {
+			if (reader.poll()) {
+				changes.offer(publisher.publish(reader.getSpots(), reader.getTimestamp()));
+			}
+		} catch (IOException e) {
+			System.err.println("Error: the spot file could not be read");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Publishes spot states worked out somewhere else, such as MATLAB. The
+	 * array is copied straight away, so the caller may keep using it.
+	 *
+	 * @param spots
+	 *            true for every open spot
+	 */
+	public void publishSpots(boolean[] spots) {
+		changes.offer(publisher.publish(spots, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Returns the current state of the lot. The snapshot never changes, and a
+	 * new one (with a higher sequence number) is only published when a spot
+	 * changes.
+	 *
+	 * @return the latest snapshot, or null if there isn't one yet
+	 */
+	public OccupancySnapshot getSnapshot() {
+		return publisher.get();
+	}
+
+	/**
+	 * @return the publisher the spot states go through, for anyone who wants to follow them
+	 */
+	public OccupancyPublisher getPublisher() {
+		return publisher;
+	}
+
+	/**
+	 * @return the stream of spot changes, for anyone who only wants to hear what flipped
+	 */
+	public SpotChangeStream getChanges() {
+		return changes;
+	}
+
+	/**
+	 * @return the current spot states, true for open spots, or null if there
+	 *         aren't any yet
+	 */
+	public boolean[] getCurrentSpots() {
+		OccupancySnapshot snapshot = publisher.get();
+		return snapshot == null ? null : snapshot.toBooleans();
+	}
+
+	/**
+	 * @return a copy of the current spot states in packed form, or null if
+	 *         there aren't any yet
+	 */
+	public SpotBitSet getCurrentSpotBits() {
+		OccupancySnapshot snapshot = publisher.get();
+		return snapshot == null ? null : snapshot.toSpotBitSet();
+	}
+
+	/**
+	 * @return the percentage of open spots, 0 if there are no spot states yet
+	 */
+	public int getCurrentPercent() {
+		OccupancySnapshot snapshot = publisher.get();
+		return snapshot == null ? 0 : snapshot.getPercentOpen();
+	}
+
+	/**
+	 * @return the history the spot states are sampled into
+	 */
+	public HistoryHandler getHistory() {
+		return history;
+	}
+
+	/**
+	 * @return where the frames come from, null if the engine doesn't capture
+	 */
+	public FrameCapture getCapture() {
+		return capture;
+	}
+
+	/**
+	 * Runs the engine without a UI until the process is killed, printing the
+	 * state of the lot now and then. With -Dparking.spotfile=path the spot
+	 * states are read from a spot file instead of worked out from the camera,
+	 * and with -Dparking.http.port=port they are served over HTTP (see
+	 * OccupancyServer). See detectWith() for the detection settings.
+	 *
+	 * @param args
+	 *            the feed url (the campus camera if left out) and the number
+	 *            of detection runs per second (1)
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		long start = System.nanoTime();
+		String url = args.length > 0 ? args[0] : FrameCapture.DEFAULT_URL;
+		double frequency = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+		String spotFile = System.getProperty("parking.spotfile");
+
+		final HistoryHandler history = new HistoryHandler();
+		final OccupancyEngine engine;
+		if (spotFile != null) {
+			engine = new OccupancyEngine(null, history);
+			engine.followSpotFile(new File(spotFile));
+		} else {
+			int[][] quads = SpotLayout.getSpotQuads();
+			FrameCapture capture = new FrameCapture(url, FrameCapture.FEED_WIDTH, FrameCapture.FEED_HEIGHT);
+			//nobody looks at the rest of the frame, so only the spots get copied
+			capture.setAnalysisRegion(OccupancyDetector.boundingBox(quads), true);
+			engine = new OccupancyEngine(capture, history);
+			engine.detectWith(quads);
+		}
+		engine.setDetectionFrequency(frequency);
+		engine.start();
+		engine.schedule(new PeriodicTask("status", new Runnable() {
+			@Override
+			public void run() {
+				OccupancySnapshot snapshot = engine.getSnapshot();
+				if (snapshot == null) {
+					System.out.println("no spot states yet");
+				} else {
+					System.out.println(String.format("%d%% open (%d of %d), update %d", snapshot.getPercentOpen(),
+							snapshot.getOpen(), snapshot.getNumSpots(), snapshot.getSequence()));
+				}
+			}
+		}, 0.1));
+		final OccupancyServer server = OccupancyServer.startIfConfigured(engine);
+
+		//the pipeline runs on daemon threads, so main stays around until the process is told to stop
+		final CountDownLatch stopped = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				if (server != null) {
+					server.stop();
+				}
+				engine.stop();
+				if (engine.getCapture() != null) {
+					engine.getCapture().close();
+				}
+				history.close();
+				stopped.countDown();
+			}
+		}, "engine-shutdown"));
+		System.out.println(String.format("occupancy engine started in %.0f ms", (System.nanoTime() - start) / 1e6));
+		stopped.await();
+	}
+
+}// end OccupancyEngine
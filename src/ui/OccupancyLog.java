@@ -0,0 +1,262 @@
+package ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Append-only binary log of spot states, one file per day. Every record has
+ * the same size: an epoch timestamp in milliseconds followed by the spot
+ * states packed 64 to a long, so an append is a single small write no matter
+ * how much history there is. Writes are forced to disk in batches rather than
+ * one at a time.
+ *
+ * <pre>
+ * segment file:  int magic, int version, int numSpots, then records
+ * record:        long timeMillis, long[ceil(numSpots/64)] spot bits (see SpotBitSet)
+ * </pre>
+ *
+ * @version 1.0
+ */
+public class OccupancyLog {
+
+	private static final int MAGIC = 0x4F434331; // "OCC1"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 12;
+	private static final String SUFFIX = ".occ";
+
+	private final File dir;
+	private final int numSpots;
+	private final int words;
+	private final int recordBytes;
+
+	private final DateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+	private final Calendar cal = Calendar.getInstance();
+
+	// the segment currently being appended to
+	private RandomAccessFile segmentFile;
+	private FileChannel segment;
+	private long segmentDayStart = -1;
+	private long segmentDayEnd = -1;
+	private final ByteBuffer record;
+
+	// records written since the last force, and when that was
+	private int unsynced = 0;
+	private long lastSync = 0;
+	private int syncEvery = 16;
+	private long syncIntervalMillis = 5000;
+
+	/**
+	 * @param dir
+	 *            the folder that holds the day segments, created if needed
+	 * @param numSpots
+	 *            the number of spots in every record
+	 */
+	public OccupancyLog(File dir, int numSpots) {
+		this.dir = dir;
+		this.numSpots = numSpots;
+		words = SpotBitSet.wordsFor(numSpots);
+		recordBytes = 8 + 8 * words;
+		record = ByteBuffer.allocate(recordBytes);
+		dir.mkdirs();
+	}
+
+	/**
+	 * Appends one sample. Opens a new day segment when the day changes.
+	 *
+	 * @param timeMillis
+	 *            when the sample was taken
+	 * @param spots
+	 *            the spot states
+	 * @throws IOException
+	 *             if the segment can't be written
+	 */
+	public synchronized void append(long timeMillis, SpotBitSet spots) throws IOException {
+		record.clear();
+		record.putLong(timeMillis);
+		for (int w = 0; w < words; w++) {
+			record.putLong(w < spots.wordCount() ? spots.getWord(w) : 0);
+		}
+		record.flip();
+		write(timeMillis);
+	}
+
+	/**
+	 * Writes the prepared record to the right segment and forces it to disk if
+	 * the batch is full or old enough.
+	 */
+	private void write(long timeMillis) throws IOException {
+		if (segment == null || timeMillis < segmentDayStart || timeMillis >= segmentDayEnd) {
+			openSegment(timeMillis);
+		}
+		while (record.hasRemaining()) {
+			segment.write(record);
+		}
+		unsynced++;
+		long now = System.currentTimeMillis();
+		if (unsynced >= syncEvery || now - lastSync >= syncIntervalMillis) {
+			segment.force(false);
+			unsynced = 0;
+			lastSync = now;
+		}
+	}
+
+	/**
+	 * Closes the current segment and opens (or creates) the one for the day
+	 * that timeMillis falls in.
+	 */
+	private void openSegment(long timeMillis) throws IOException {
+		close();
+
+		cal.setTimeInMillis(timeMillis);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		segmentDayStart = cal.getTimeInMillis();
+		cal.add(Calendar.DAY_OF_MONTH, 1);
+		segmentDayEnd = cal.getTimeInMillis();
+
+		File f = new File(dir, dayFormat.format(new Date(segmentDayStart)) + SUFFIX);
+		segmentFile = new RandomAccessFile(f, "rw");
+		segment = segmentFile.getChannel();
+		if (segment.size() < HEADER_BYTES) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(VERSION).putInt(numSpots).flip();
+			segment.write(header, 0);
+			segment.truncate(HEADER_BYTES);
+		} else {
+			checkHeader(segment);
+		}
+		// drop a record that was only half written when the program last died
+		long size = segment.size();
+		long whole = HEADER_BYTES + (size - HEADER_BYTES) / recordBytes * recordBytes;
+		if (whole != size) {
+			segment.truncate(whole);
+		}
+		segment.position(whole);
+	}
+
+	/**
+	 * Makes sure a segment was written with the same layout this log uses.
+	 */
+	private void checkHeader(FileChannel ch) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		ch.read(header, 0);
+		header.flip();
+		if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != numSpots) {
+			throw new IOException("history segment has a different format or spot count");
+		}
+	}
+
+	/**
+	 * Forces everything written so far to disk.
+	 *
+	 * @throws IOException
+	 *             if the segment can't be forced
+	 */
+	public synchronized void flush() throws IOException {
+		if (segment != null && unsynced > 0) {
+			segment.force(false);
+			unsynced = 0;
+			lastSync = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Forces and closes the current segment. The next append reopens it.
+	 *
+	 * @throws IOException
+	 *             if the segment can't be closed
+	 */
+	public synchronized void close() throws IOException {
+		if (segment != null) {
+			flush();
+			segmentFile.close();
+			segment = null;
+			segmentFile = null;
+		}
+	}
+
+	/**
+	 * Sets how often appended records are forced to disk. Whichever limit is
+	 * reached first triggers the force.
+	 *
+	 * @param records
+	 *            the most records that may be waiting
+	 * @param millis
+	 *            the longest a record may be waiting
+	 */
+	public void setSyncBatch(int records, long millis) {
+		syncEvery = Math.max(1, records);
+		syncIntervalMillis = millis;
+	}
+
+	/**
+	 * @return the day segments on disk, oldest first
+	 */
+	public File[] getSegments() {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return new File[0];
+		}
+		List<File> segments = new ArrayList<File>();
+		for (File f : files) {
+			if (f.getName().endsWith(SUFFIX)) {
+				segments.add(f);
+			}
+		}
+		File[] sorted = segments.toArray(new File[segments.size()]);
+		// yyyy-MM-dd names sort by date
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * Reads every record of one day segment.
+	 *
+	 * @param segmentFile
+	 *            a file from getSegments()
+	 * @param times
+	 *            receives the timestamp of each record
+	 * @param spots
+	 *            receives the spot states of each record
+	 * @throws IOException
+	 *             if the segment can't be read
+	 */
+	public synchronized void readSegment(File segmentFile, List<Long> times, List<SpotBitSet> spots) throws IOException {
+		flush();
+		RandomAccessFile raf = new RandomAccessFile(segmentFile, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			checkHeader(ch);
+			long count = (ch.size() - HEADER_BYTES) / recordBytes;
+			ByteBuffer buf = ByteBuffer.allocate((int) (count * recordBytes));
+			int n = 0;
+			while (buf.hasRemaining() && n >= 0) {
+				n = ch.read(buf, HEADER_BYTES + buf.position());
+			}
+			buf.flip();
+			for (long r = 0; r < count; r++) {
+				times.add(buf.getLong());
+				SpotBitSet b = new SpotBitSet(numSpots);
+				for (int w = 0; w < words; w++) {
+					b.setWord(w, buf.getLong());
+				}
+				spots.add(b);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+}// end OccupancyLog
@@ -0,0 +1,91 @@
+package ui;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the latest spot states of a lot from whoever works them out (the
+ * detector, MATLAB) to whoever shows or stores them (the UI, the history).
+ * A new OccupancySnapshot is swapped in with one atomic reference, so readers
+ * never see half of an update and never wait on a lock. Publishing states that
+ * are no different from the current ones is a no-op, so a reader that finds
+ * the same sequence number as last time has nothing to do.
+ *
+ * @version 1.0
+ */
+public class OccupancyPublisher {
+
+	private final AtomicReference<OccupancySnapshot> current = new AtomicReference<OccupancySnapshot>();
+
+	/**
+	 * @return the latest snapshot, or null if nothing has been published yet
+	 */
+	public OccupancySnapshot get() {
+		return current.get();
+	}
+
+	/**
+	 * @return the sequence number of the latest snapshot, 0 if there is none
+	 */
+	public long getSequence() {
+		OccupancySnapshot s = current.get();
+		return s == null ? 0 : s.getSequence();
+	}
+
+	/**
+	 * Publishes new spot states if they differ from the current ones.
+	 *
+	 * @param spots
+	 *            the spot states, set for open spots. Copied, so the caller
+	 *            can reuse it
+	 * @param timestamp
+	 *            when the states were seen, in milliseconds
+	 * @return the snapshot now current, new or not
+	 */
+	public OccupancySnapshot publish(SpotBitSet spots, long timestamp) {
+		while (true) {
+			OccupancySnapshot last = current.get();
+			if (last != null && same(last, spots)) {
+				return last;
+			}
+			OccupancySnapshot next = OccupancySnapshot.of(last == null ? 1 : last.getSequence() + 1, timestamp, spots);
+			if (current.compareAndSet(last, next)) {
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * Publishes new spot states if they differ from the current ones.
+	 *
+	 * @param spots
+	 *            true for every open spot. Copied, so the caller can reuse it
+	 * @param timestamp
+	 *            when the states were seen, in milliseconds
+	 * @return the snapshot now current, new or not
+	 */
+	public OccupancySnapshot publish(boolean[] spots, long timestamp) {
+		while (true) {
+			OccupancySnapshot last = current.get();
+			OccupancySnapshot next = OccupancySnapshot.of(last == null ? 1 : last.getSequence() + 1, timestamp, spots);
+			if (next.sameSpots(last)) {
+				return last;
+			}
+			if (current.compareAndSet(last, next)) {
+				return next;
+			}
+		}
+	}
+
+	private static boolean same(OccupancySnapshot snapshot, SpotBitSet spots) {
+		if (snapshot.getNumSpots() != spots.size()) {
+			return false;
+		}
+		for (int w = 0; w < spots.wordCount(); w++) {
+			if (snapshot.getWord(w) != spots.getWord(w)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}// end OccupancyPublisher
@@ -0,0 +1,88 @@
+package ui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The latest spot states of every camera, keyed by camera id. Each camera
+ * replaces its own snapshot as a whole, so readers on other threads always see
+ * one consistent frame's worth of states without taking a lock. Every update
+ * gets the next sequence number, whether the states changed or not, so a
+ * camera that stopped reporting can be told from one whose lot is quiet.
+ *
+ * @version 1.0
+ */
+public class OccupancyRegistry {
+
+	private final ConcurrentHashMap<String, OccupancySnapshot> readings = new ConcurrentHashMap<String, OccupancySnapshot>();
+
+	/**
+	 * Replaces a camera's reading. Only the camera's own worker should call
+	 * this.
+	 *
+	 * @param id
+	 *            the camera
+	 * @param spots
+	 *            the spot states, set for open spots. Copied, so the caller
+	 *            can reuse it
+	 * @param timestamp
+	 *            when the frame was captured
+	 */
+	public void update(String id, SpotBitSet spots, long timestamp) {
+		OccupancySnapshot last = readings.get(id);
+		readings.put(id, OccupancySnapshot.of(last == null ? 1 : last.getSequence() + 1, timestamp, spots));
+	}
+
+	/**
+	 * Forgets a camera.
+	 *
+	 * @param id
+	 *            the camera
+	 */
+	public void remove(String id) {
+		readings.remove(id);
+	}
+
+	/**
+	 * @param id
+	 *            a camera
+	 * @return its latest snapshot, or null if it hasn't reported yet
+	 */
+	public OccupancySnapshot get(String id) {
+		return readings.get(id);
+	}
+
+	/**
+	 * @return every camera that has reported, sorted by id
+	 */
+	public List<String> getIds() {
+		List<String> ids = new ArrayList<String>(readings.keySet());
+		Collections.sort(ids);
+		return ids;
+	}
+
+	/**
+	 * @return the number of spots over every camera that has reported
+	 */
+	public int getTotalSpots() {
+		int total = 0;
+		for (OccupancySnapshot r : readings.values()) {
+			total += r.getNumSpots();
+		}
+		return total;
+	}
+
+	/**
+	 * @return the number of open spots over every camera that has reported
+	 */
+	public int getTotalOpen() {
+		int open = 0;
+		for (OccupancySnapshot r : readings.values()) {
+			open += r.getOpen();
+		}
+		return open;
+	}
+
+}// end OccupancyRegistry
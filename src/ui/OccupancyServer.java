@@ -0,0 +1,713 @@
+package ui;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the state of the lot over HTTP as JSON, for signage, phones and the
+ * campus portal, using the HTTP server built into the JDK:
+ *
+ * <pre>
+ * GET /spots              every spot, true for open, with the sequence number
+ * GET /percent            the percentage of open spots
+ * GET /history            the percent full series of the last week, one row per day
+ * GET /history?daysAgo=n  the percent full series of one day
+ * GET /metrics            every counter and latency of the app
+ * GET /events             server-sent events: a snapshot, then batches of spot changes
+ * </pre>
+ *
+ * Responses are turned into bytes once per version of what they show and
+ * handed out as-is until that changes, and carry the version as an ETag so
+ * pollers can get a 304 instead. The ETags start with when the server was
+ * made, so a client can't mistake a version from before a restart for the
+ * current one. The event stream follows the engine's SpotChangeStream, so
+ * every flip reaches the client even if the spot flips back before the next
+ * broadcast. Each batch of changes is made into bytes once and the same bytes
+ * are queued for every subscriber, so many readers cost little more than one.
+ * A small pool writes the queues out; a client too slow to keep up only holds
+ * up itself, and once its queue is full, what is waiting is thrown away and
+ * it gets the whole lot instead. The engine's keyframes go out to everyone as
+ * snapshots, which lets clients resync.
+ *
+ * @version 1.0
+ */
+public class OccupancyServer {
+
+	// how often the event stream sends out the changes that came in
+	private static final double eventCheckFreq = 10;
+	// how often an idle event stream gets a comment, which keeps proxies from closing it
+	private static final double heartbeatFreq = 1.0 / 15;
+	private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+	// how many events may wait for a slow client before it has to start over from a snapshot
+	private static final int SUBSCRIBER_QUEUE = 32;
+	// how many clients can be written to at once
+	private static final int WRITER_THREADS = 4;
+	private static final LongAdder requests = Metrics.counter("http.requests");
+	private static final LongAdder cacheHits = Metrics.counter("http.cache.hits");
+	private static final LatencyHistogram broadcastTime = Metrics.histogram("http.events.broadcast");
+	private static final LongAdder overflows = Metrics.counter("http.events.overflows");
+
+	private final OccupancyEngine engine;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	// sets the ETags of this run apart from those of earlier ones
+	private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+	private ScheduledExecutorService events;
+	private ExecutorService writers;
+	private PeriodicTask broadcaster;
+	private PeriodicTask heartbeat;
+
+	// the bytes of every response, by path, along with what they were made from
+	private final ConcurrentHashMap<String, Cached> cache = new ConcurrentHashMap<String, Cached>();
+	private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+	// set when a client subscribes, so the broadcaster sends it the lot even if nothing changed
+	private volatile boolean joined = false;
+
+	// changes and keyframes from the engine waiting for the next broadcast, guarded by changeFeed
+	private OccupancySnapshot pendingKeyframe;
+	private long pendingSequence;
+	private int pendingCount = 0;
+	private long[] pendingTimes = new long[64];
+	private int[] pendingSpots = new int[64];
+	private boolean[] pendingOpen = new boolean[64];
+	private final SpotChangeListener changeFeed = new SpotChangeListener() {
+		@Override
+		public synchronized void spotChanged(long sequence, long timestamp, int spot, boolean open) {
+			if (pendingCount == pendingSpots.length) {
+				int n = pendingCount * 2;
+				pendingTimes = Arrays.copyOf(pendingTimes, n);
+				pendingSpots = Arrays.copyOf(pendingSpots, n);
+				pendingOpen = Arrays.copyOf(pendingOpen, n);
+			}
+			pendingTimes[pendingCount] = timestamp;
+			pendingSpots[pendingCount] = spot;
+			pendingOpen[pendingCount] = open;
+			pendingCount++;
+			pendingSequence = sequence;
+		}
+
+		@Override
+		public synchronized void keyframe(OccupancySnapshot snapshot) {
+			// the keyframe already holds every change before it
+			pendingKeyframe = snapshot;
+			pendingCount = 0;
+			pendingSequence = snapshot.getSequence();
+		}
+	};
+
+	// the lot as the clients know it, and the changes being sent; only touched by the broadcaster
+	private SpotBitSet lot;
+	private long lotSequence;
+	private long lotTime;
+	private int batchCount = 0;
+	private long[] batchTimes = new long[64];
+	private int[] batchSpots = new int[64];
+	private boolean[] batchOpen = new boolean[64];
+
+	/**
+	 * A response body, made from one version of something.
+	 */
+	private static final class Cached {
+		// the snapshot sequence, or the array the history handed out
+		final long version;
+		final Object source;
+		final byte[] body;
+
+		Cached(long version, Object source, byte[] body) {
+			this.version = version;
+			this.source = source;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * One open event stream.
+	 */
+	private static final class Subscriber {
+		final HttpExchange exchange;
+		final OutputStream out;
+		// the sequence of the snapshot the client is up to date with, -1 until it has the lot.
+		// Only touched by the events thread
+		long sequence = -1;
+		// the events waiting to be written, and whether a writer is on it
+		final ArrayBlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(SUBSCRIBER_QUEUE);
+		final AtomicBoolean writing = new AtomicBoolean();
+
+		Subscriber(HttpExchange exchange) {
+			this.exchange = exchange;
+			out = exchange.getResponseBody();
+		}
+	}
+
+	/**
+	 * @param engine
+	 *            the engine whose lot is served
+	 * @param port
+	 *            the port to listen on, 0 for any free one
+	 * @throws IOException
+	 *             if the port can't be bound
+	 */
+	public OccupancyServer(OccupancyEngine engine, int port) throws IOException {
+		this.engine = engine;
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		executor = Executors.newFixedThreadPool(4, daemonThreads("http-thread"));
+		server.setExecutor(executor);
+
+		server.createContext("/spots", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serveSnapshot(exchange, "/spots", true);
+			}
+		});
+		server.createContext("/percent", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serveSnapshot(exchange, "/percent", false);
+			}
+		});
+		server.createContext("/history", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serveHistory(exchange);
+			}
+		});
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serveMetrics(exchange);
+			}
+		});
+		server.createContext("/events", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				subscribe(exchange);
+			}
+		});
+	}
+
+	private static ThreadFactory daemonThreads(final String name) {
+		final AtomicInteger threadCount = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Starts listening and streaming events.
+	 */
+	public synchronized void start() {
+		events = Executors.newSingleThreadScheduledExecutor(daemonThreads("events-thread"));
+		writers = Executors.newFixedThreadPool(WRITER_THREADS, daemonThreads("events-writer"));
+		broadcaster = new PeriodicTask("events", new Runnable() {
+			@Override
+			public void run() {broadcast();}
+		}, eventCheckFreq);
+		heartbeat = new PeriodicTask("heartbeat", new Runnable() {
+			@Override
+			public void run() {sendToAll(HEARTBEAT);}
+		}, heartbeatFreq);
+		engine.getChanges().addListener(changeFeed);
+		broadcaster.start(events, 0);
+		heartbeat.start(events, (long) (1e9 / heartbeatFreq));
+		server.start();
+		System.out.println("occupancy api listening on port " + getPort());
+	}
+
+	/**
+	 * Stops listening and closes every event stream.
+	 */
+	public synchronized void stop() {
+		if (events == null) {
+			return;
+		}
+		engine.getChanges().removeListener(changeFeed);
+		broadcaster.cancel();
+		heartbeat.cancel();
+		events.shutdown();
+		events = null;
+		writers.shutdownNow();
+		for (Subscriber s : subscribers) {
+			drop(s);
+		}
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	/**
+	 * Starts a server for the engine if the parking.http.port system property
+	 * is set.
+	 *
+	 * @param engine
+	 *            the engine whose lot is served
+	 * @return the running server, or null if there is none
+	 */
+	public static OccupancyServer startIfConfigured(OccupancyEngine engine) {
+		String port = System.getProperty("parking.http.port");
+		if (port == null) {
+			return null;
+		}
+		try {
+			OccupancyServer server = new OccupancyServer(engine, Integer.parseInt(port));
+			server.start();
+			return server;
+		} catch (IOException e) {
+			System.err.println("Error: the occupancy api could not be started on port " + port);
+			e.printStackTrace();
+		} catch (NumberFormatException e) {
+			System.err.println("Error: parking.http.port is not a port number: " + port);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the port the server listens on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return the number of open event streams
+	 */
+	public int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+	/**
+	 * Answers /spots and /percent from the current snapshot.
+	 */
+	private void serveSnapshot(HttpExchange exchange, String path, boolean withSpots) throws IOException {
+		if (!isGet(exchange)) {
+			return;
+		}
+		OccupancySnapshot snapshot = engine.getSnapshot();
+		if (snapshot == null) {
+			send(exchange, 503, null, json("{\"error\":\"no spot states yet\"}"));
+			return;
+		}
+		Cached c = cache.get(path);
+		if (c == null || c.version != snapshot.getSequence()) {
+			StringBuilder b = new StringBuilder(64 + (withSpots ? 6 * snapshot.getNumSpots() : 0));
+			b.append('{');
+			appendSummary(b, snapshot);
+			if (withSpots) {
+				b.append(",\"spots\":");
+				appendSpots(b, snapshot);
+			}
+			b.append('}');
+			c = new Cached(snapshot.getSequence(), null, json(b));
+			cache.put(path, c);
+		} else {
+			cacheHits.increment();
+		}
+		send(exchange, 200, "\"" + epoch + "-" + c.version + "\"", c.body);
+	}
+
+	/**
+	 * Answers /history. The history hands out the same array until a new
+	 * sample comes in, so the bytes are kept for as long as the array is.
+	 */
+	private void serveHistory(HttpExchange exchange) throws IOException {
+		if (!isGet(exchange)) {
+			return;
+		}
+		HistoryHandler history = engine.getHistory();
+		String query = exchange.getRequestURI().getQuery();
+		Object series;
+		String key;
+		if (query != null && query.startsWith("daysAgo=")) {
+			int daysAgo;
+			try {
+				daysAgo = Integer.parseInt(query.substring("daysAgo=".length()));
+			} catch (NumberFormatException e) {
+				send(exchange, 400, null, json("{\"error\":\"daysAgo must be a number\"}"));
+				return;
+			}
+			// the charts look back as far as histL days
+			if (daysAgo < 0 || daysAgo > history.histL) {
+				send(exchange, 400, null, json("{\"error\":\"daysAgo must be from 0 to " + history.histL + "\"}"));
+				return;
+			}
+			series = history.getDaysAgoPercents(daysAgo);
+			key = "/history?" + daysAgo;
+		} else {
+			series = history.getAllPercents();
+			key = "/history";
+		}
+
+		Cached c = cache.get(key);
+		if (c == null || c.source != series) {
+			StringBuilder b = new StringBuilder(4096);
+			b.append("{\"slots\":[");
+			for (int j = 0; j < history.timeOfDay.length; j++) {
+				if (j > 0) {
+					b.append(',');
+				}
+				b.append('"').append(history.timeOfDay[j]).append('"');
+			}
+			b.append("],\"percentFull\":");
+			if (series instanceof int[]) {
+				appendInts(b, (int[]) series);
+			} else {
+				double[][] days = (double[][]) series;
+				b.append('[');
+				for (int i = 0; i < days.length; i++) {
+					if (i > 0) {
+						b.append(',');
+					}
+					b.append('[');
+					for (int j = 0; j < days[i].length; j++) {
+						if (j > 0) {
+							b.append(',');
+						}
+						b.append(Math.round(days[i][j] * 10) / 10.0);
+					}
+					b.append(']');
+				}
+				b.append(']');
+			}
+			b.append('}');
+			c = new Cached(c == null ? 1 : c.version + 1, series, json(b));
+			cache.put(key, c);
+		} else {
+			cacheHits.increment();
+		}
+		send(exchange, 200, "\"" + epoch + "-h" + c.version + "\"", c.body);
+	}
+
+	/**
+	 * Answers /metrics. Never cached, it changes all the time.
+	 */
+	private void serveMetrics(HttpExchange exchange) throws IOException {
+		if (!isGet(exchange)) {
+			return;
+		}
+		StringBuilder b = new StringBuilder(4096);
+		b.append('{');
+		boolean first = true;
+		for (Map.Entry<String, Number> e : Metrics.values().entrySet()) {
+			if (!first) {
+				b.append(',');
+			}
+			first = false;
+			b.append('"').append(e.getKey()).append("\":");
+			Number v = e.getValue();
+			if (v instanceof Double) {
+				b.append(Math.round(v.doubleValue() * 10) / 10.0);
+			} else {
+				b.append(v);
+			}
+		}
+		b.append('}');
+		send(exchange, 200, null, json(b));
+	}
+
+	/**
+	 * Opens an event stream. The broadcaster sends the client the whole lot
+	 * on its next run and keeps it up to date from then on. The exchange
+	 * stays open after this returns, so no thread is tied up per client. A
+	 * HEAD only gets the headers a stream would start with.
+	 */
+	private void subscribe(HttpExchange exchange) throws IOException {
+		if (!isGet(exchange)) {
+			return;
+		}
+		requests.increment();
+		Headers headers = exchange.getResponseHeaders();
+		headers.set("Content-Type", "text/event-stream; charset=utf-8");
+		headers.set("Cache-Control", "no-cache");
+		headers.set("Access-Control-Allow-Origin", "*");
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		exchange.sendResponseHeaders(200, 0);
+		subscribers.add(new Subscriber(exchange));
+		joined = true;
+	}
+
+	/**
+	 * Sends every subscriber the spot changes that came in since the last
+	 * broadcast. The batch is made once and shared; a subscriber that doesn't
+	 * have the lot as it was before the batch (it just joined, or missed
+	 * one) gets the whole lot instead, and after a keyframe everyone does.
+	 */
+	private void broadcast() {
+		OccupancySnapshot keyframe;
+		long sequence;
+		synchronized (changeFeed) {
+			keyframe = pendingKeyframe;
+			pendingKeyframe = null;
+			sequence = pendingSequence;
+			if (batchSpots.length < pendingCount) {
+				batchTimes = new long[pendingSpots.length];
+				batchSpots = new int[pendingSpots.length];
+				batchOpen = new boolean[pendingSpots.length];
+			}
+			batchCount = pendingCount;
+			System.arraycopy(pendingTimes, 0, batchTimes, 0, batchCount);
+			System.arraycopy(pendingSpots, 0, batchSpots, 0, batchCount);
+			System.arraycopy(pendingOpen, 0, batchOpen, 0, batchCount);
+			pendingCount = 0;
+		}
+		if (keyframe == null && batchCount == 0 && !joined) {
+			return;
+		}
+		joined = false;
+
+		long start = System.nanoTime();
+		long before = lotSequence;
+		if (keyframe != null) {
+			lot = keyframe.toSpotBitSet();
+			lotTime = keyframe.getTimestamp();
+			before = -1;
+		}
+		if (lot == null) {
+			return;
+		}
+		for (int k = 0; k < batchCount; k++) {
+			if (batchSpots[k] < lot.size()) {
+				lot.set(batchSpots[k], batchOpen[k]);
+			}
+			lotTime = batchTimes[k];
+		}
+		lotSequence = sequence;
+
+		byte[] batch = batchCount > 0 && before >= 0 ? changesEvent() : null;
+		byte[] full = null;
+		for (Subscriber s : subscribers) {
+			byte[] event;
+			if (batch != null && s.sequence == before) {
+				event = batch;
+			} else if (s.sequence != lotSequence || before < 0) {
+				if (full == null) {
+					full = snapshotEvent(OccupancySnapshot.of(lotSequence, lotTime, lot));
+				}
+				event = full;
+			} else {
+				continue;
+			}
+			if (!enqueue(s, event)) {
+				// it fell behind: forget what it was waiting for and send it the whole lot
+				overflows.increment();
+				s.queue.clear();
+				if (full == null) {
+					full = snapshotEvent(OccupancySnapshot.of(lotSequence, lotTime, lot));
+				}
+				// only this thread adds to the queue, so there is room now
+				enqueue(s, full);
+			}
+			s.sequence = lotSequence;
+		}
+		broadcastTime.recordSince(start);
+	}
+
+	/**
+	 * Queues a heartbeat for every subscriber that has nothing else waiting.
+	 * Only called from the events thread.
+	 */
+	private void sendToAll(byte[] bytes) {
+		for (Subscriber s : subscribers) {
+			if (s.queue.isEmpty()) {
+				enqueue(s, bytes);
+			}
+		}
+	}
+
+	/**
+	 * Queues an event for a subscriber and makes sure a writer is on it.
+	 * Never blocks. Only called from the events thread.
+	 *
+	 * @return false if the subscriber's queue is full
+	 */
+	private boolean enqueue(final Subscriber s, byte[] bytes) {
+		if (!s.queue.offer(bytes)) {
+			return false;
+		}
+		if (s.writing.compareAndSet(false, true)) {
+			try {
+				writers.execute(new Runnable() {
+					@Override
+					public void run() {writeQueued(s);}
+				});
+			} catch (RejectedExecutionException e) {
+				// stopping
+				s.writing.set(false);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes out a subscriber's queue until it is empty. Runs on the writer
+	 * pool, one writer per subscriber at a time, so a slow client only holds
+	 * up itself and one writer thread.
+	 */
+	private void writeQueued(Subscriber s) {
+		while (true) {
+			byte[] event = s.queue.poll();
+			if (event == null) {
+				s.writing.set(false);
+				// an event may have come in after the poll but before the flag was cleared
+				if (s.queue.isEmpty() || !s.writing.compareAndSet(false, true)) {
+					return;
+				}
+				continue;
+			}
+			try {
+				s.out.write(event);
+				if (s.queue.isEmpty()) {
+					s.out.flush();
+				}
+			} catch (IOException e) {
+				drop(s);
+				return;
+			}
+		}
+	}
+
+	private void drop(Subscriber s) {
+		subscribers.remove(s);
+		s.exchange.close();
+	}
+
+	private static byte[] snapshotEvent(OccupancySnapshot snapshot) {
+		StringBuilder b = new StringBuilder(96 + 6 * snapshot.getNumSpots());
+		b.append("id: ").append(snapshot.getSequence()).append("\nevent: snapshot\ndata: {");
+		appendSummary(b, snapshot);
+		b.append(",\"spots\":");
+		appendSpots(b, snapshot);
+		b.append("}\n\n");
+		return b.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Lists the batch of changes in the order they happened, as
+	 * "changes":[[timestamp, spot, open], ...] with open 1 or 0. A spot can
+	 * show up more than once if it flipped back and forth.
+	 */
+	private byte[] changesEvent() {
+		StringBuilder b = new StringBuilder(128 + 24 * batchCount);
+		b.append("id: ").append(lotSequence).append("\nevent: changes\ndata: {");
+		b.append("\"sequence\":").append(lotSequence);
+		b.append(",\"timestamp\":").append(lotTime);
+		b.append(",\"spotCount\":").append(lot.size());
+		b.append(",\"open\":").append(lot.cardinality());
+		b.append(",\"percentOpen\":").append(lot.percentSet());
+		b.append(",\"changes\":[");
+		for (int k = 0; k < batchCount; k++) {
+			if (k > 0) {
+				b.append(',');
+			}
+			b.append('[').append(batchTimes[k]).append(',').append(batchSpots[k]).append(',')
+					.append(batchOpen[k] ? 1 : 0).append(']');
+		}
+		b.append("]}\n\n");
+		return b.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void appendSummary(StringBuilder b, OccupancySnapshot snapshot) {
+		b.append("\"sequence\":").append(snapshot.getSequence());
+		b.append(",\"timestamp\":").append(snapshot.getTimestamp());
+		b.append(",\"spotCount\":").append(snapshot.getNumSpots());
+		b.append(",\"open\":").append(snapshot.getOpen());
+		b.append(",\"percentOpen\":").append(snapshot.getPercentOpen());
+	}
+
+	private static void appendSpots(StringBuilder b, OccupancySnapshot snapshot) {
+		b.append('[');
+		for (int i = 0; i < snapshot.getNumSpots(); i++) {
+			if (i > 0) {
+				b.append(',');
+			}
+			b.append(snapshot.isOpen(i));
+		}
+		b.append(']');
+	}
+
+	private static void appendInts(StringBuilder b, int[] values) {
+		b.append('[');
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				b.append(',');
+			}
+			b.append(values[i]);
+		}
+		b.append(']');
+	}
+
+	private static byte[] json(CharSequence s) {
+		return s.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Turns away anything but GET (and HEAD).
+	 *
+	 * @return true if the request may go on
+	 */
+	private boolean isGet(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		if (method.equals("GET") || method.equals("HEAD")) {
+			return true;
+		}
+		exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+		send(exchange, 405, null, json("{\"error\":\"only GET is supported\"}"));
+		return false;
+	}
+
+	/**
+	 * Sends a whole JSON response, or a 304 if the client already has this
+	 * version.
+	 */
+	private void send(HttpExchange exchange, int status, String etag, byte[] body) throws IOException {
+		requests.increment();
+		try {
+			Headers headers = exchange.getResponseHeaders();
+			headers.set("Access-Control-Allow-Origin", "*");
+			headers.set("Cache-Control", "no-cache");
+			if (etag != null) {
+				headers.set("ETag", etag);
+				if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					exchange.sendResponseHeaders(304, -1);
+					return;
+				}
+			}
+			headers.set("Content-Type", "application/json; charset=utf-8");
+			if (exchange.getRequestMethod().equals("HEAD")) {
+				exchange.sendResponseHeaders(status, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(status, body.length);
+			exchange.getResponseBody().write(body);
+		} finally {
+			exchange.close();
+		}
+	}
+
+}// end OccupancyServer
@@ -0,0 +1,168 @@
+package ui;
+
+import java.util.Arrays;
+
+/**
+ * The spot states of a lot at one moment, packed 64 spots to a long. A
+ * snapshot never changes once made, so it can be handed to any thread without
+ * locks: whoever works out new states publishes a new snapshot, and readers
+ * compare sequence numbers to tell whether there is anything new to do.
+ *
+ * @version 1.0
+ */
+public final class OccupancySnapshot {
+
+	private final long sequence;
+	private final long timestamp;
+	private final long[] words;
+	private final int numSpots;
+	private final int open;
+
+	private OccupancySnapshot(long sequence, long timestamp, long[] words, int numSpots) {
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+		this.words = words;
+		this.numSpots = numSpots;
+		int count = 0;
+		for (long w : words) {
+			count += Long.bitCount(w);
+		}
+		open = count;
+	}
+
+	/**
+	 * @param sequence
+	 *            the version number, one higher than the snapshot it replaces
+	 * @param timestamp
+	 *            when the states were seen, in milliseconds
+	 * @param spots
+	 *            the spot states, set for open spots. Copied
+	 * @return a new snapshot
+	 */
+	public static OccupancySnapshot of(long sequence, long timestamp, SpotBitSet spots) {
+		long[] words = new long[spots.wordCount()];
+		for (int w = 0; w < words.length; w++) {
+			words[w] = spots.getWord(w);
+		}
+		return new OccupancySnapshot(sequence, timestamp, words, spots.size());
+	}
+
+	/**
+	 * @param sequence
+	 *            the version number, one higher than the snapshot it replaces
+	 * @param timestamp
+	 *            when the states were seen, in milliseconds
+	 * @param spots
+	 *            true for every open spot. Copied
+	 * @return a new snapshot
+	 */
+	public static OccupancySnapshot of(long sequence, long timestamp, boolean[] spots) {
+		long[] words = new long[SpotBitSet.wordsFor(spots.length)];
+		for (int i = 0; i < spots.length; i++) {
+			if (spots[i]) {
+				words[i >>> 6] |= 1L << i;
+			}
+		}
+		return new OccupancySnapshot(sequence, timestamp, words, spots.length);
+	}
+
+	/**
+	 * @return the version number, higher for newer snapshots of the same lot
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return when the states were seen, in milliseconds
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the number of spots
+	 */
+	public int getNumSpots() {
+		return numSpots;
+	}
+
+	/**
+	 * @param i
+	 *            a spot number
+	 * @return true if the spot is open
+	 */
+	public boolean isOpen(int i) {
+		return (words[i >>> 6] & 1L << i) != 0;
+	}
+
+	/**
+	 * @return the number of open spots
+	 */
+	public int getOpen() {
+		return open;
+	}
+
+	/**
+	 * @return the percentage of spots that are open, rounded down
+	 */
+	public int getPercentOpen() {
+		return numSpots == 0 ? 0 : 100 * open / numSpots;
+	}
+
+	/**
+	 * @param w
+	 *            a word number
+	 * @return spots 64*w up to 64*w+63, lowest spot in the lowest bit
+	 */
+	public long getWord(int w) {
+		return words[w];
+	}
+
+	/**
+	 * @return the number of longs the states are packed into
+	 */
+	public int wordCount() {
+		return words.length;
+	}
+
+	/**
+	 * @param other
+	 *            another snapshot
+	 * @return true if both have the same spot states, whatever their versions
+	 */
+	public boolean sameSpots(OccupancySnapshot other) {
+		return other != null && numSpots == other.numSpots && Arrays.equals(words, other.words);
+	}
+
+	/**
+	 * @param spots
+	 *            receives the spot states, set for open spots
+	 */
+	public void copyTo(SpotBitSet spots) {
+		for (int w = 0; w < words.length && w < spots.wordCount(); w++) {
+			spots.setWord(w, words[w]);
+		}
+	}
+
+	/**
+	 * @return a new set with the spot states, set for open spots
+	 */
+	public SpotBitSet toSpotBitSet() {
+		SpotBitSet spots = new SpotBitSet(numSpots);
+		copyTo(spots);
+		return spots;
+	}
+
+	/**
+	 * @return true for every open spot
+	 */
+	public boolean[] toBooleans() {
+		boolean[] spots = new boolean[numSpots];
+		for (int i = 0; i < numSpots; i++) {
+			spots[i] = isOpen(i);
+		}
+		return spots;
+	}
+
+}// end OccupancySnapshot
@@ -0,0 +1,207 @@
+package ui;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A job run at a fixed rate on a shared scheduler. Unlike
+ * scheduleAtFixedRate, a run that overshoots its period doesn't leave a
+ * backlog of runs that then fire back to back: the missed ticks are counted
+ * and skipped, and the next run lines up with the original schedule again.
+ * Keeps track of how late each run started (jitter) and how long it took,
+ * also as the "task.name.period", "task.name.jitter" and "task.name.run"
+ * metrics.
+ *
+ * @version 1.0
+ */
+public class PeriodicTask implements Runnable {
+
+	private final String name;
+	private final Runnable job;
+	private final long periodNanos;
+	private ScheduledExecutorService scheduler;
+	private volatile ScheduledFuture<?> future;
+	private volatile boolean cancelled = false;
+	private long nextDue;
+
+	// written only by the run in progress, read by anyone
+	private volatile long runs = 0;
+	private volatile long skipped = 0;
+	private volatile long jitterNanos = 0;
+	private volatile long maxJitterNanos = 0;
+	private volatile long busyNanos = 0;
+	private long lastStart = 0;
+	private final LatencyHistogram periodTime;
+	private final LatencyHistogram runTime;
+	private final LatencyHistogram jitterTime;
+
+	/**
+	 * @param name
+	 *            what the task is called in the stats
+	 * @param job
+	 *            what to run every period
+	 * @param frequency
+	 *            runs per second
+	 */
+	public PeriodicTask(String name, Runnable job, double frequency) {
+		this.name = name;
+		this.job = job;
+		periodNanos = Math.max(1, (long) (1e9 / frequency));
+		periodTime = Metrics.histogram("task." + name + ".period");
+		runTime = Metrics.histogram("task." + name + ".run");
+		jitterTime = Metrics.histogram("task." + name + ".jitter");
+	}
+
+	/**
+	 * Schedules the first run.
+	 *
+	 * @param scheduler
+	 *            the scheduler to run on
+	 * @param delayNanos
+	 *            how long to wait before the first run
+	 */
+	public synchronized void start(ScheduledExecutorService scheduler, long delayNanos) {
+		this.scheduler = scheduler;
+		cancelled = false;
+		nextDue = System.nanoTime() + delayNanos;
+		future = scheduler.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Stops the task. A run already in progress finishes, but nothing is
+	 * scheduled after it.
+	 */
+	public synchronized void cancel() {
+		cancelled = true;
+		if (future != null) {
+			future.cancel(false);
+		}
+	}
+
+	/**
+	 * Runs the job once and schedules the next run. Called by the scheduler.
+	 */
+	@Override
+	public void run() {
+		if (cancelled) {
+			return;
+		}
+		long start = System.nanoTime();
+		long late = Math.max(0, start - nextDue);
+		jitterNanos += late;
+		jitterTime.record(late);
+		if (late > maxJitterNanos) {
+			maxJitterNanos = late;
+		}
+		if (lastStart != 0) {
+			// the real time between runs, what the period actually came out as
+			periodTime.record(start - lastStart);
+		}
+		lastStart = start;
+
+		try {
+			job.run();
+		} catch (RuntimeException e) {
+			// one bad run shouldn't stop the task for good
+			System.err.println("Error: the " + name + " task failed");
+			e.printStackTrace();
+		} catch (Error e) {
+			// the scheduler would swallow this quietly, so say why the task is gone
+			System.err.println("Error: the " + name + " task failed and was stopped");
+			cancelled = true;
+			throw e;
+		}
+
+		long end = System.nanoTime();
+		busyNanos += end - start;
+		runTime.record(end - start);
+		runs++;
+
+		long next = nextDue + periodNanos;
+		if (next - end < 0) {
+			// overran, drop the ticks that were missed instead of running them late
+			long missed = (end - next) / periodNanos + 1;
+			skipped += missed;
+			next += missed * periodNanos;
+		}
+		nextDue = next;
+		reschedule(next - end);
+	}
+
+	/**
+	 * Schedules the next run, unless the task was cancelled while this one
+	 * ran. Locked against cancel(), so a cancel can't slip in between the
+	 * check and storing the new future it needs to cancel.
+	 */
+	private synchronized void reschedule(long delayNanos) {
+		if (cancelled) {
+			return;
+		}
+		try {
+			future = scheduler.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			// the scheduler was shut down under the task, which is as good as cancelling it
+			cancelled = true;
+		}
+	}
+
+	/**
+	 * @return the name of the task
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the time between runs in nanoseconds
+	 */
+	public long getPeriodNanos() {
+		return periodNanos;
+	}
+
+	/**
+	 * @return the number of runs so far
+	 */
+	public long getRuns() {
+		return runs;
+	}
+
+	/**
+	 * @return the number of ticks skipped because a run overran
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * @return how late a run started on average, in microseconds
+	 */
+	public double getMeanJitterMicros() {
+		long n = runs;
+		return n == 0 ? 0 : jitterNanos / 1000.0 / n;
+	}
+
+	/**
+	 * @return the latest any run started, in microseconds
+	 */
+	public double getMaxJitterMicros() {
+		return maxJitterNanos / 1000.0;
+	}
+
+	/**
+	 * @return how long a run took on average, in microseconds
+	 */
+	public double getMeanBusyMicros() {
+		long n = runs;
+		return n == 0 ? 0 : busyNanos / 1000.0 / n;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d runs, %d skipped, jitter %.1f us mean %.1f us max, %.1f us per run", name,
+				getRuns(), getSkipped(), getMeanJitterMicros(), getMaxJitterMicros(), getMeanBusyMicros());
+	}
+
+}// end PeriodicTask
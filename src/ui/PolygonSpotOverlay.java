@@ -0,0 +1,70 @@
+package ui;
+
+import javafx.scene.Group;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Polygon;
+
+/**
+ * The highlighted spots drawn over the live feed, one Polygon per spot. The
+ * polygons are built once, and each update only touches the spots whose state
+ * differs from what is on screen, found by XOR-ing the packed spot states a
+ * word at a time. Must only be used on the FX thread.
+ *
+ * @version 1.0
+ */
+public class PolygonSpotOverlay implements SpotOverlay {
+
+	private final Group group = new Group();
+	private final Polygon[] polygons;
+	// what is on screen right now
+	private final SpotBitSet shown;
+
+	/**
+	 * @param quads
+	 *            one {x0,y0,x1,y1,x2,y2,x3,y3} quad per spot, as from
+	 *            SpotLayout.getSpotQuads()
+	 */
+	public PolygonSpotOverlay(int[][] quads) {
+		polygons = new Polygon[quads.length];
+		shown = new SpotBitSet(quads.length);
+		for (int i = 0; i < quads.length; i++) {
+			double[] points = new double[quads[i].length];
+			for (int c = 0; c < points.length; c++) {
+				points[c] = quads[i][c];
+			}
+			polygons[i] = new Polygon(points);
+			polygons[i].setFill(null);
+			// the overlay is only for looking at, clicks go to the pane
+			polygons[i].setMouseTransparent(true);
+		}
+		group.getChildren().addAll(polygons);
+		group.setManaged(false);
+	}
+
+	@Override
+	public Group getNode() {
+		return group;
+	}
+
+	@Override
+	public int update(SpotBitSet spots) {
+		int changed = 0;
+		int words = Math.min(spots.wordCount(), shown.wordCount());
+		for (int w = 0; w < words; w++) {
+			long now = spots.getWord(w);
+			long diff = now ^ shown.getWord(w);
+			// visit only the bits that flipped
+			while (diff != 0) {
+				int i = (w << 6) + Long.numberOfTrailingZeros(diff);
+				diff &= diff - 1;
+				if (i < polygons.length) {
+					polygons[i].setFill((now >>> (i & 63) & 1L) != 0 ? Color.YELLOW : null);
+					changed++;
+				}
+			}
+			shown.setWord(w, now);
+		}
+		return changed;
+	}
+
+}// end PolygonSpotOverlay
@@ -1,5 +1,7 @@
 package ui;
 
+import java.io.File;
+
 import javafx.application.Application;
 import javafx.stage.Stage;
 
@@ -12,11 +14,29 @@ import javafx.stage.Stage;
 public class RiddleRunAroundParking extends Application {
 
 	//Make the two main objects. The UI and the background processor
-	private static ProcessingManager pm = new ProcessingManager(20,false);
+	private static ProcessingManager pm = createProcessor();
 	public static DisplayUI ui;
 
 	/**
-	 * Main method: initializes the image processor and UI display.
+	 * Makes a processor that works out the spots from the camera, or, when
+	 * started with -Dparking.spotfile=path, one that reads them from a spot
+	 * file written by another process such as MATLAB.
+	 * 
+	 * @return the background processor
+	 */
+	private static ProcessingManager createProcessor() {
+		String spotFile = System.getProperty("parking.spotfile");
+		if (spotFile == null) {
+			return new ProcessingManager(20,false);
+		}
+		ProcessingManager processor = new ProcessingManager(20,false,null);
+		processor.followSpotFile(new File(spotFile));
+		return processor;
+	}
+
+	/**
+	 * Main method: initializes the image processor and UI display, and the
+	 * occupancy api if -Dparking.http.port is set.
 	 * 
 	 * @param args
 	 *            command line arguments
@@ -25,6 +45,7 @@ public class RiddleRunAroundParking extends Application {
 
 		//begin the two main object threads
 		pm.beginProcThread();
+		OccupancyServer.startIfConfigured(pm.getEngine());
 		launch(args);
 	}
 
@@ -0,0 +1,190 @@
+package ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the spot states another process writes into a memory-mapped spot file
+ * (see SharedSpotWriter for the layout). Meant to be polled: a poll that finds
+ * the same sequence as last time costs one read of a long, and only a new,
+ * whole write is copied out. The file may show up after the reader is made.
+ * When the writer starts over, which shows as the sequence going back or the
+ * header changing, the file is mapped and its header checked again.
+ *
+ * @version 1.0
+ */
+public class SharedSpotReader {
+
+	// how often a poll tries again when it keeps catching the writer mid-write
+	private static final int MAX_ATTEMPTS = 16;
+
+	private final File file;
+	private RandomAccessFile raf;
+	private MappedByteBuffer buffer;
+	private int numSpots;
+	private int words;
+	private long[] scratch;
+	private SpotBitSet spots;
+	// 0 is what a fresh file says before the first write, so it is never taken as states
+	private long lastSequence = 0;
+	private long timestamp;
+	private long torn = 0;
+
+	/**
+	 * @param file
+	 *            the spot file, which doesn't have to exist yet
+	 */
+	public SharedSpotReader(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Checks for new spot states.
+	 *
+	 * @return true if new states were read, see getSpots()
+	 * @throws IOException
+	 *             if the file is there but isn't a spot file
+	 */
+	public boolean poll() throws IOException {
+		if (buffer == null && !open()) {
+			return false;
+		}
+
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			long before = (long) SharedSpotWriter.SEQUENCE.getAcquire(buffer, SharedSpotWriter.SEQUENCE_AT);
+			if (before == lastSequence) {
+				return false;
+			}
+			if ((before & 1) != 0) {
+				// the writer is in the middle of it
+				torn++;
+				Thread.yield();
+				continue;
+			}
+			if (before < lastSequence || !headerMatches()) {
+				// the writer started over, maybe on a new file or for a different lot
+				if (!open()) {
+					return false;
+				}
+				continue;
+			}
+			long time = buffer.getLong(SharedSpotWriter.TIMESTAMP_AT);
+			for (int w = 0; w < words; w++) {
+				scratch[w] = buffer.getLong(SharedSpotWriter.HEADER_BYTES + 8 * w);
+			}
+			// the copy is done before the sequence is looked at again
+			VarHandle.loadLoadFence();
+			if (buffer.getLong(SharedSpotWriter.SEQUENCE_AT) != before) {
+				// a write started while copying, the copy may be half old and half new
+				torn++;
+				continue;
+			}
+			for (int w = 0; w < words; w++) {
+				spots.setWord(w, scratch[w]);
+			}
+			timestamp = time;
+			lastSequence = before;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the mapped header still describes the lot the reader
+	 *         was set up for
+	 */
+	private boolean headerMatches() {
+		return buffer.getInt(0) == SharedSpotWriter.MAGIC && buffer.getInt(SharedSpotWriter.SPOTS_AT) == numSpots
+				&& buffer.getInt(SharedSpotWriter.WORDS_AT) == words;
+	}
+
+	/**
+	 * Maps the file, if it is there.
+	 *
+	 * @return false if there is no file yet, or a writer is still setting it up
+	 */
+	private boolean open() throws IOException {
+		close();
+		if (!file.exists() || file.length() < SharedSpotWriter.HEADER_BYTES) {
+			return false;
+		}
+		raf = new RandomAccessFile(file, "r");
+		FileChannel channel = raf.getChannel();
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SharedSpotWriter.HEADER_BYTES);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		if (header.getInt(0) == 0) {
+			// just created, the writer hasn't got to the header yet
+			close();
+			return false;
+		}
+		if (header.getInt(0) != SharedSpotWriter.MAGIC || header.getInt(4) != SharedSpotWriter.VERSION) {
+			close();
+			throw new IOException(file + " is not a spot file");
+		}
+		numSpots = header.getInt(SharedSpotWriter.SPOTS_AT);
+		words = header.getInt(SharedSpotWriter.WORDS_AT);
+		long size = SharedSpotWriter.HEADER_BYTES + 8L * words;
+		if (numSpots < 0 || words != SpotBitSet.wordsFor(numSpots) || channel.size() < size) {
+			close();
+			throw new IOException(file + " has a broken header");
+		}
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		scratch = new long[words];
+		if (spots == null || spots.size() != numSpots) {
+			spots = new SpotBitSet(numSpots);
+		}
+		lastSequence = 0;
+		return true;
+	}
+
+	/**
+	 * @return the spot states of the last successful poll, set for open
+	 *         spots. Reused by the next poll
+	 */
+	public SpotBitSet getSpots() {
+		return spots;
+	}
+
+	/**
+	 * @return when the states of the last successful poll were seen
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the sequence number of the last successful poll, 0 before the first
+	 */
+	public long getSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * @return how many times a poll caught the writer mid-write and had to look again
+	 */
+	public long getTornReads() {
+		return torn;
+	}
+
+	/**
+	 * Lets go of the file. The next poll maps it again.
+	 */
+	public void close() {
+		buffer = null;
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException e) {
+				System.err.println("Error: the spot file could not be closed");
+			}
+			raf = null;
+		}
+	}
+
+}// end SharedSpotReader
@@ -0,0 +1,167 @@
+package ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Writes spot states into a memory-mapped file that another process reads
+ * with a SharedSpotReader, so results cross the process boundary without any
+ * copying through a language bridge. This is the Java side of the format and
+ * a stand-in for MATLAB (or any other detector) when there is none. The file
+ * is little-endian:
+ *
+ * <pre>
+ *  0  int   magic "OSP1"
+ *  4  int   version, 1
+ *  8  int   number of spots
+ * 12  int   number of 64 bit words
+ * 16  long  sequence, odd while a write is in progress
+ * 24  long  timestamp of the states, in milliseconds
+ * 32  long  words, spot i in bit (i % 64) of word (i / 64), set for open
+ * </pre>
+ *
+ * A writer bumps the sequence to odd, writes the timestamp and words, and
+ * bumps it to even again. A reader that sees the same even sequence before
+ * and after copying knows the copy is whole (a seqlock). A writer that starts
+ * over on an existing file writes the header first and the sequence last.
+ *
+ * @version 1.0
+ */
+public class SharedSpotWriter {
+
+	public static final int MAGIC = 0x4F535031; // "OSP1"
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 32;
+	static final int SPOTS_AT = 8;
+	static final int WORDS_AT = 12;
+	static final int SEQUENCE_AT = 16;
+	static final int TIMESTAMP_AT = 24;
+	// the sequence, read and written with the ordering the seqlock needs
+	static final VarHandle SEQUENCE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer buffer;
+	private final int numSpots;
+	private final int words;
+	private long sequence;
+
+	/**
+	 * Creates or takes over a spot file. An existing file's sequence is
+	 * carried on, so readers still see the next write as new.
+	 *
+	 * @param file
+	 *            the file to write
+	 * @param numSpots
+	 *            the number of spots
+	 * @throws IOException
+	 *             if the file can't be created or mapped
+	 */
+	public SharedSpotWriter(File file, int numSpots) throws IOException {
+		this.numSpots = numSpots;
+		words = SpotBitSet.wordsFor(numSpots);
+		raf = new RandomAccessFile(file, "rw");
+		try {
+			long size = HEADER_BYTES + 8L * words;
+			boolean reuse = raf.length() == size;
+			raf.setLength(size);
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (reuse && buffer.getInt(0) == MAGIC && buffer.getInt(SPOTS_AT) == numSpots) {
+				// round up, a writer that died mid-write leaves an odd sequence
+				sequence = (buffer.getLong(SEQUENCE_AT) + 1) & ~1L;
+			} else {
+				sequence = 0;
+			}
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(SPOTS_AT, numSpots);
+			buffer.putInt(WORDS_AT, words);
+			// readers trust the header once they see the sequence
+			SEQUENCE.setRelease(buffer, SEQUENCE_AT, sequence);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes new spot states. Must not be called from two threads at once.
+	 *
+	 * @param spots
+	 *            the spot states, set for open spots
+	 * @param timestamp
+	 *            when the states were seen, in milliseconds
+	 */
+	public void write(SpotBitSet spots, long timestamp) {
+		SEQUENCE.setOpaque(buffer, SEQUENCE_AT, ++sequence); // odd: readers keep off
+		// the odd sequence lands before any of the new states
+		VarHandle.storeStoreFence();
+		buffer.putLong(TIMESTAMP_AT, timestamp);
+		for (int w = 0; w < words; w++) {
+			buffer.putLong(HEADER_BYTES + 8 * w, w < spots.wordCount() ? spots.getWord(w) : 0);
+		}
+		SEQUENCE.setRelease(buffer, SEQUENCE_AT, ++sequence); // even: done
+	}
+
+	/**
+	 * @return the number of spots in the file
+	 */
+	public int getNumSpots() {
+		return numSpots;
+	}
+
+	/**
+	 * @return the sequence number of the last write
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Flushes the file to disk and closes it.
+	 *
+	 * @throws IOException
+	 *             if the file can't be closed
+	 */
+	public void close() throws IOException {
+		buffer.force();
+		raf.close();
+	}
+
+	/**
+	 * Pretends to be a detector: flips a random spot every so often, for
+	 * trying out a SharedSpotReader without MATLAB.
+	 *
+	 * @param args
+	 *            the file (media/spots.shm if left out), the number of spots
+	 *            (28) and the milliseconds between writes (1000)
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		File file = new File(args.length > 0 ? args[0] : "media/spots.shm");
+		int numSpots = args.length > 1 ? Integer.parseInt(args[1]) : 28;
+		long interval = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+
+		SharedSpotWriter writer = new SharedSpotWriter(file, numSpots);
+		SpotBitSet spots = new SpotBitSet(numSpots);
+		Random random = new Random();
+		try {
+			while (true) {
+				int i = random.nextInt(numSpots);
+				spots.set(i, !spots.get(i));
+				writer.write(spots, System.currentTimeMillis());
+				System.out.println(writer.getSequence() + " " + spots);
+				Thread.sleep(interval);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+}// end SharedSpotWriter
@@ -0,0 +1,253 @@
+package ui;
+
+import java.util.Arrays;
+
+/**
+ * The state of every spot in a lot, packed 64 spots to a long. Counting set
+ * spots is a handful of Long.bitCount calls, and a lot with thousands of
+ * spots still fits in a few dozen longs. What a set bit means is up to the
+ * owner: the live spot states set open spots, the history sets full ones.
+ *
+ * @version 1.0
+ */
+public final class SpotBitSet {
+
+	private final long[] words;
+	private final int size;
+
+	/**
+	 * Makes a set with every spot empty.
+	 *
+	 * @param size
+	 *            the number of spots
+	 */
+	public SpotBitSet(int size) {
+		this.size = size;
+		words = new long[wordsFor(size)];
+	}
+
+	/**
+	 * @param size
+	 *            a number of spots
+	 * @return the number of longs needed to hold that many spots
+	 */
+	public static int wordsFor(int size) {
+		return (size + 63) >>> 6;
+	}
+
+	/**
+	 * @param spots
+	 *            true for every set spot
+	 * @return a new set with the same states
+	 */
+	public static SpotBitSet fromBooleans(boolean[] spots) {
+		SpotBitSet set = new SpotBitSet(spots.length);
+		for (int i = 0; i < spots.length; i++) {
+			if (spots[i]) {
+				set.words[i >>> 6] |= 1L << i;
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * @param spots
+	 *            1 for every set spot, 0 for every other one
+	 * @return a new set with the same states
+	 */
+	public static SpotBitSet fromInts(int[] spots) {
+		SpotBitSet set = new SpotBitSet(spots.length);
+		for (int i = 0; i < spots.length; i++) {
+			if (spots[i] != 0) {
+				set.words[i >>> 6] |= 1L << i;
+			}
+		}
+		return set;
+	}
+
+	/**
+	 * Reads a string of '0' and '1' characters, one per spot, as used by the
+	 * xml history. Anything else counts as empty.
+	 *
+	 * @param digits
+	 *            the spot states
+	 * @param size
+	 *            the number of spots
+	 * @return a new set with the same states
+	 */
+	public static SpotBitSet parse(CharSequence digits, int size) {
+		SpotBitSet set = new SpotBitSet(size);
+		set.setDigits(digits);
+		return set;
+	}
+
+	/**
+	 * Replaces the states with a string of '0' and '1' characters, one per
+	 * spot. Whitespace is skipped, anything else counts as empty, and spots
+	 * past the end of the string are empty.
+	 *
+	 * @param digits
+	 *            the spot states
+	 */
+	public void setDigits(CharSequence digits) {
+		clear();
+		int i = 0;
+		for (int c = 0; c < digits.length() && i < size; c++) {
+			char ch = digits.charAt(c);
+			if (Character.isWhitespace(ch)) {
+				continue;
+			}
+			if (ch == '1') {
+				words[i >>> 6] |= 1L << i;
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * @param i
+	 *            a spot number
+	 * @return true if the spot is set
+	 */
+	public boolean get(int i) {
+		return (words[i >>> 6] & 1L << i) != 0;
+	}
+
+	/**
+	 * @param i
+	 *            a spot number
+	 * @param value
+	 *            the new state of the spot
+	 */
+	public void set(int i, boolean value) {
+		if (value) {
+			words[i >>> 6] |= 1L << i;
+		} else {
+			words[i >>> 6] &= ~(1L << i);
+		}
+	}
+
+	/**
+	 * Marks every spot empty.
+	 */
+	public void clear() {
+		Arrays.fill(words, 0);
+	}
+
+	/**
+	 * Copies the states of another set of the same size.
+	 *
+	 * @param other
+	 *            the set to copy
+	 */
+	public void copyFrom(SpotBitSet other) {
+		System.arraycopy(other.words, 0, words, 0, Math.min(words.length, other.words.length));
+	}
+
+	/**
+	 * @return the number of set spots
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (long w : words) {
+			count += Long.bitCount(w);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the percentage of spots that are set, rounded down
+	 */
+	public int percentSet() {
+		return size == 0 ? 0 : 100 * cardinality() / size;
+	}
+
+	/**
+	 * @return the number of spots
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of longs the states are packed into
+	 */
+	public int wordCount() {
+		return words.length;
+	}
+
+	/**
+	 * @param w
+	 *            a word number
+	 * @return spots 64*w up to 64*w+63, lowest spot in the lowest bit
+	 */
+	public long getWord(int w) {
+		return words[w];
+	}
+
+	/**
+	 * @param w
+	 *            a word number
+	 * @param bits
+	 *            spots 64*w up to 64*w+63, lowest spot in the lowest bit
+	 */
+	public void setWord(int w, long bits) {
+		// never let bits past the last spot in, or cardinality would count them
+		if (w == words.length - 1 && (size & 63) != 0) {
+			bits &= -1L >>> (64 - (size & 63));
+		}
+		words[w] = bits;
+	}
+
+	/**
+	 * @param spots
+	 *            receives true for every set spot
+	 */
+	public void toBooleans(boolean[] spots) {
+		for (int i = 0; i < spots.length && i < size; i++) {
+			spots[i] = get(i);
+		}
+	}
+
+	/**
+	 * @return 1 for every set spot, 0 for every other one
+	 */
+	public int[] toInts() {
+		int[] spots = new int[size];
+		for (int i = 0; i < size; i++) {
+			spots[i] = get(i) ? 1 : 0;
+		}
+		return spots;
+	}
+
+	/**
+	 * @return one '0' or '1' per spot, as stored in the xml history
+	 */
+	public String toDigitString() {
+		char[] digits = new char[size];
+		for (int i = 0; i < size; i++) {
+			digits[i] = get(i) ? '1' : '0';
+		}
+		return new String(digits);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof SpotBitSet)) {
+			return false;
+		}
+		SpotBitSet other = (SpotBitSet) o;
+		return size == other.size && Arrays.equals(words, other.words);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * size + Arrays.hashCode(words);
+	}
+
+	@Override
+	public String toString() {
+		return toDigitString();
+	}
+
+}// end SpotBitSet
@@ -0,0 +1,37 @@
+package ui;
+
+/**
+ * Receives the spot states of a lot as a stream of changes rather than whole
+ * snapshots. A listener first gets a keyframe with every spot, then one call
+ * per spot that flips, and another keyframe every so often so it can check
+ * it hasn't drifted. Calls come from whichever thread published the states,
+ * so listeners should be quick and must not block.
+ *
+ * @version 1.0
+ */
+public interface SpotChangeListener {
+
+	/**
+	 * A spot flipped.
+	 *
+	 * @param sequence
+	 *            the sequence of the snapshot the change showed up in
+	 * @param timestamp
+	 *            when the change was seen, in milliseconds
+	 * @param spot
+	 *            the spot number
+	 * @param open
+	 *            true if the spot is now open
+	 */
+	void spotChanged(long sequence, long timestamp, int spot, boolean open);
+
+	/**
+	 * The state of every spot. Replaces whatever the listener worked out from
+	 * the changes so far.
+	 *
+	 * @param snapshot
+	 *            the whole lot
+	 */
+	void keyframe(OccupancySnapshot snapshot);
+
+}// end SpotChangeListener
@@ -0,0 +1,113 @@
+package ui;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns published snapshots into a stream of spot changes: each snapshot is
+ * compared with the previous one a word at a time, and listeners hear about
+ * only the spots that flipped. For a big lot where a few spots change a
+ * minute this is a handful of small events instead of a whole snapshot per
+ * update. Keyframes with the whole lot go out when a listener joins, when
+ * the lot changes size, and whenever keyframe() is called, so consumers can
+ * resync.
+ *
+ * @version 1.0
+ */
+public class SpotChangeStream {
+
+	private static final LongAdder changeCount = Metrics.counter("changes.events");
+	private static final LongAdder keyframeCount = Metrics.counter("changes.keyframes");
+
+	private final CopyOnWriteArrayList<SpotChangeListener> listeners = new CopyOnWriteArrayList<SpotChangeListener>();
+	// the last snapshot passed on, what the next one is compared with
+	private OccupancySnapshot last;
+
+	/**
+	 * Adds a listener, which gets a keyframe of the current states straight
+	 * away if there are any.
+	 *
+	 * @param listener
+	 *            the listener to add
+	 */
+	public synchronized void addListener(SpotChangeListener listener) {
+		listeners.add(listener);
+		if (last != null) {
+			send(listener, last);
+		}
+	}
+
+	/**
+	 * @param listener
+	 *            the listener to remove
+	 */
+	public void removeListener(SpotChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Passes on whatever changed since the last snapshot. Snapshots that are
+	 * older than the last one, which can happen when two threads publish at
+	 * once, are ignored; the newer one already carried their changes.
+	 *
+	 * @param snapshot
+	 *            the snapshot just published
+	 */
+	public synchronized void offer(OccupancySnapshot snapshot) {
+		if (snapshot == null || (last != null && snapshot.getSequence() <= last.getSequence())) {
+			return;
+		}
+		OccupancySnapshot before = last;
+		last = snapshot;
+		if (before == null || before.getNumSpots() != snapshot.getNumSpots()) {
+			sendToAll(snapshot);
+			return;
+		}
+
+		long sequence = snapshot.getSequence();
+		long timestamp = snapshot.getTimestamp();
+		for (int w = 0; w < snapshot.wordCount(); w++) {
+			long diff = before.getWord(w) ^ snapshot.getWord(w);
+			while (diff != 0) {
+				int spot = (w << 6) + Long.numberOfTrailingZeros(diff);
+				diff &= diff - 1;
+				boolean open = snapshot.isOpen(spot);
+				changeCount.increment();
+				for (SpotChangeListener l : listeners) {
+					try {
+						l.spotChanged(sequence, timestamp, spot, open);
+					} catch (RuntimeException e) {
+						System.err.println("Error: a spot change listener failed");
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends every listener a keyframe of the current states, if there are any.
+	 */
+	public synchronized void keyframe() {
+		if (last != null) {
+			sendToAll(last);
+		}
+	}
+
+	private void sendToAll(OccupancySnapshot snapshot) {
+		for (SpotChangeListener l : listeners) {
+			send(l, snapshot);
+		}
+	}
+
+	private void send(SpotChangeListener listener, OccupancySnapshot snapshot) {
+		keyframeCount.increment();
+		try {
+			listener.keyframe(snapshot);
+		} catch (RuntimeException e) {
+			System.err.println("Error: a spot change listener failed");
+			e.printStackTrace();
+		}
+	}
+
+}// end SpotChangeStream
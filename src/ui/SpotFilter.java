@@ -0,0 +1,134 @@
+package ui;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a spot from flickering when someone walks across it or a cloud's
+ * shadow passes over. Each spot keeps its confirmed state until the detector
+ * has been sure of the other state for a number of frames in a row; only
+ * then does the change go out. The thresholds leave a band in between, so a
+ * spot whose score hovers around the detector's own cut-off stays as it is.
+ * <p>
+ * The state is kept in primitive arrays and an update allocates nothing, so
+ * the filter can run on every detected frame.
+ *
+ * @version 1.0
+ */
+public class SpotFilter {
+
+	private static final LongAdder flickers = Metrics.counter("filter.flickers");
+	private static final LongAdder confirmed = Metrics.counter("filter.confirmed");
+
+	private final int numSpots;
+	// the state that went out for each spot
+	private final boolean[] open;
+	// frames in a row that said the spot is in the other state
+	private final int[] streak;
+	private boolean primed = false;
+
+	private int confirmFrames = 3;
+	// a score above takenAbove counts for taken, below openBelow for open
+	private double takenAbove = 1.0;
+	private double openBelow = 0.7;
+
+	/**
+	 * @param numSpots
+	 *            the number of spots filtered
+	 */
+	public SpotFilter(int numSpots) {
+		this.numSpots = numSpots;
+		open = new boolean[numSpots];
+		streak = new int[numSpots];
+	}
+
+	/**
+	 * Sets how many frames in a row a spot has to look different before it
+	 * changes. At one detection a second, 3 frames means a change shows up 3
+	 * seconds late.
+	 *
+	 * @param frames
+	 *            a number of frames, 1 to pass every change straight on
+	 */
+	public void setConfirmFrames(int frames) {
+		confirmFrames = Math.max(1, frames);
+	}
+
+	/**
+	 * Sets the scores (see OccupancyDetector.getScores()) that count as
+	 * evidence for each state. Scores in between count for neither and start
+	 * the count over.
+	 *
+	 * @param takenAbove
+	 *            an open spot scoring above this is on its way to taken
+	 * @param openBelow
+	 *            a taken spot scoring below this is on its way to open; no
+	 *            more than takenAbove
+	 */
+	public void setThresholds(double takenAbove, double openBelow) {
+		this.takenAbove = takenAbove;
+		this.openBelow = Math.min(openBelow, takenAbove);
+	}
+
+	/**
+	 * Runs one frame of scores through the filter. The first frame is taken
+	 * as it is, since there is nothing to compare it with.
+	 *
+	 * @param scores
+	 *            one score per spot from the detector
+	 * @param spots
+	 *            the confirmed states, set for an open spot; only the spots
+	 *            that changed are written, so the same set should be passed
+	 *            in every frame
+	 * @return the number of spots whose confirmed state changed
+	 */
+	public int update(double[] scores, SpotBitSet spots) {
+		int n = Math.min(numSpots, Math.min(scores.length, spots.size()));
+		if (!primed) {
+			for (int k = 0; k < n; k++) {
+				open[k] = scores[k] <= takenAbove;
+				streak[k] = 0;
+				spots.set(k, open[k]);
+			}
+			primed = true;
+			return n;
+		}
+
+		int changes = 0;
+		for (int k = 0; k < n; k++) {
+			boolean against = open[k] ? scores[k] > takenAbove : scores[k] < openBelow;
+			if (!against) {
+				if (streak[k] > 0) {
+					// it went back before it was confirmed
+					flickers.increment();
+					streak[k] = 0;
+				}
+				continue;
+			}
+			if (++streak[k] >= confirmFrames) {
+				open[k] = !open[k];
+				streak[k] = 0;
+				spots.set(k, open[k]);
+				changes++;
+			}
+		}
+		if (changes > 0) {
+			confirmed.add(changes);
+		}
+		return changes;
+	}
+
+	/**
+	 * Forgets the confirmed states, so the next frame is taken as it is.
+	 */
+	public void reset() {
+		primed = false;
+	}
+
+	/**
+	 * @return the number of spots filtered
+	 */
+	public int getNumSpots() {
+		return numSpots;
+	}
+
+}// end SpotFilter
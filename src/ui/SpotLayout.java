@@ -0,0 +1,231 @@
+package ui;
+
+/**
+ * Where the spots of the lot are, in lot pane coordinates. Kept apart from
+ * the processing and the UI so that anything (the UI, a headless engine, the
+ * detector) can get at the layout without pulling in the rest.
+ *
+ * @version 1.0
+ */
+public final class SpotLayout {
+
+	//the spot matrix has no spots across the grass and past the end of each row
+	private static final int[] rowBreaks = {4, 11, 25};
+
+	private SpotLayout() {
+	}
+
+	/**
+	 * Defines the divisor lines of our specific lot.
+	 * 
+	 * @return an array of coordinate pairs {top x, top y, bottom x, bottom y}
+	 *         that represents the pixel location of parking spots divisor lines
+	 */
+	public static int[][] getSpotMatrix() {
+		int[][] lines = new int[32][4];
+
+		int offset = 0;
+
+		lines[0][0] = 200;
+		lines[0][1] = 224 + offset;
+		lines[0][2] = 190;
+		lines[0][3] = 255 + offset;
+
+		lines[1][0] = 227;
+		lines[1][1] = 225 + offset;
+		lines[1][2] = 219;
+		lines[1][3] = 258 + offset;
+
+		lines[2][0] = 262;
+		lines[2][1] = 228 + offset;
+		lines[2][2] = 260;
+		lines[2][3] = 260 + offset;
+
+		lines[3][0] = 300;
+		lines[3][1] = 231 + offset;
+		lines[3][2] = 303;
+		lines[3][3] = 261 + offset;
+
+		lines[4][0] = 334;
+		lines[4][1] = 231 + offset;
+		lines[4][2] = 343;
+		lines[4][3] = 265 + offset;
+
+		// Grass area between these lines
+
+		lines[5][0] = 374;
+		lines[5][1] = 234 + offset;
+		lines[5][2] = 386;
+		lines[5][3] = 265 + offset;
+
+		lines[6][0] = 408;
+		lines[6][1] = 234 + offset;
+		lines[6][2] = 424;
+		lines[6][3] = 266 + offset;
+
+		lines[7][0] = 445;
+		lines[7][1] = 240 + offset;
+		lines[7][2] = 460;
+		lines[7][3] = 268 + offset;
+
+		lines[8][0] = 478;
+		lines[8][1] = 242 + offset;
+		lines[8][2] = 495;
+		lines[8][3] = 270 + offset;
+
+		lines[9][0] = 504;
+		lines[9][1] = 242 + offset;
+		lines[9][2] = 525;
+		lines[9][3] = 271 + offset;
+
+		lines[10][0] = 535;
+		lines[10][1] = 245 + offset;
+		lines[10][2] = 560;
+		lines[10][3] = 273 + offset;
+
+		lines[11][0] = 561;
+		lines[11][1] = 245 + offset;
+		lines[11][2] = 591;
+		lines[11][3] = 272 + offset;
+
+		// New row
+
+		lines[12][0] = 200;
+		lines[12][1] = 275 + offset;
+		lines[12][2] = 189;
+		lines[12][3] = 322 + offset;
+
+		lines[13][0] = 240;
+		lines[13][1] = 278 + offset;
+		lines[13][2] = 235;
+		lines[13][3] = 326 + offset;
+
+		lines[14][0] = 282;
+		lines[14][1] = 279 + offset;
+		lines[14][2] = 280;
+		lines[14][3] = 329 + offset;
+
+		lines[15][0] = 321;
+		lines[15][1] = 282 + offset;
+		lines[15][2] = 327;
+		lines[15][3] = 331 + offset;
+
+		lines[16][0] = 360;
+		lines[16][1] = 283 + offset;
+		lines[16][2] = 374;
+		lines[16][3] = 332 + offset;
+
+		lines[17][0] = 402;
+		lines[17][1] = 285 + offset;
+		lines[17][2] = 418;
+		lines[17][3] = 333 + offset;
+
+		lines[18][0] = 440;
+		lines[18][1] = 286 + offset;
+		lines[18][2] = 459;
+		lines[18][3] = 333 + offset;
+
+		lines[19][0] = 474;
+		lines[19][1] = 286 + offset;
+		lines[19][2] = 500;
+		lines[19][3] = 334 + offset;
+
+		lines[20][0] = 509;
+		lines[20][1] = 289 + offset;
+		lines[20][2] = 536;
+		lines[20][3] = 332 + offset;
+
+		lines[21][0] = 543;
+		lines[21][1] = 290 + offset;
+		lines[21][2] = 570;
+		lines[21][3] = 330 + offset;
+
+		lines[22][0] = 571;
+		lines[22][1] = 292 + offset;
+		lines[22][2] = 600;
+		lines[22][3] = 331 + offset;
+
+		lines[23][0] = 606;
+		lines[23][1] = 290 + offset;
+		lines[23][2] = 632;
+		lines[23][3] = 329 + offset;
+
+		lines[24][0] = 632;
+		lines[24][1] = 294 + offset;
+		lines[24][2] = 662;
+		lines[24][3] = 332 + offset;
+
+		lines[25][0] = 657;
+		lines[25][1] = 290 + offset;
+		lines[25][2] = 688;
+		lines[25][3] = 328 + offset;
+
+		// New line
+
+		lines[26][0] = 118;
+		lines[26][1] = 405 + offset;
+		lines[26][2] = 100;
+		lines[26][3] = 478 + offset;
+
+		lines[27][0] = 174;
+		lines[27][1] = 408 + offset;
+		lines[27][2] = 163;
+		lines[27][3] = 478 + offset;
+
+		lines[28][0] = 228;
+		lines[28][1] = 412 + offset;
+		lines[28][2] = 224;
+		lines[28][3] = 478 + offset;
+
+		lines[29][0] = 283;
+		lines[29][1] = 414 + offset;
+		lines[29][2] = 288;
+		lines[29][3] = 478 + offset;
+
+		lines[30][0] = 340;
+		lines[30][1] = 413 + offset;
+		lines[30][2] = 353;
+		lines[30][3] = 478 + offset;
+
+		lines[31][0] = 394;
+		lines[31][1] = 413 + offset;
+		lines[31][2] = 413;
+		lines[31][3] = 478 + offset;
+		// End
+		return lines;
+	}
+
+	/**
+	 * @return the quads of our specific lot, see getSpotQuads(int[][])
+	 */
+	public static int[][] getSpotQuads() {
+		return getSpotQuads(getSpotMatrix());
+	}
+
+	/**
+	 * Builds the four corners of every spot out of the divisor lines. A spot is
+	 * the area between two neighbouring lines, except across the grass and
+	 * between the end of one row and the start of the next.
+	 * 
+	 * @param lines
+	 *            the divisor lines, as from getSpotMatrix()
+	 * @return one {x0,y0,x1,y1,x2,y2,x3,y3} quad per spot, in the order the UI
+	 *         and the spot array use
+	 */
+	public static int[][] getSpotQuads(int[][] lines) {
+		int numSpots = lines.length - 1 - rowBreaks.length;
+		int[][] quads = new int[numSpots][];
+		int spot = 0;
+		int nextBreak = 0;
+		for (int i = 0; i < lines.length - 1; i++) {
+			if (nextBreak < rowBreaks.length && rowBreaks[nextBreak] == i) {
+				nextBreak++;
+				continue;
+			}
+			quads[spot++] = new int[] { lines[i][0], lines[i][1], lines[i][2], lines[i][3], lines[i + 1][2],
+					lines[i + 1][3], lines[i + 1][0], lines[i + 1][1] };
+		}
+		return quads;
+	}
+
+}// end SpotLayout
@@ -0,0 +1,27 @@
+package ui;
+
+import javafx.scene.Node;
+
+/**
+ * Something that highlights spots over the live feed. Implementations must
+ * only be used on the FX thread.
+ *
+ * @version 1.0
+ */
+public interface SpotOverlay {
+
+	/**
+	 * @return the node to put on top of the lot pane
+	 */
+	Node getNode();
+
+	/**
+	 * Brings the screen in line with new spot states.
+	 *
+	 * @param spots
+	 *            the spot states, set for a spot that should be highlighted
+	 * @return the number of spots that changed
+	 */
+	int update(SpotBitSet spots);
+
+}// end SpotOverlay
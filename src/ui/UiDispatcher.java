@@ -0,0 +1,148 @@
+package ui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+/**
+ * Hands UI updates from worker threads to the FX thread without letting them
+ * pile up. Every kind of update has one pending flag instead of a queue, so
+ * asking for the same update ten times before the next pulse still only runs
+ * it once. The flags are flushed by an AnimationTimer, which means at most one
+ * run of each kind per frame however fast the workers ask.
+ *
+ * @version 1.0
+ */
+public class UiDispatcher {
+
+	private final List<Runnable> updates = new ArrayList<Runnable>();
+	private final List<AtomicBoolean> pending = new ArrayList<AtomicBoolean>();
+	private volatile Runnable[] updateArray = new Runnable[0];
+	private volatile AtomicBoolean[] pendingArray = new AtomicBoolean[0];
+	private final AtomicLong requested = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong flushed = new AtomicLong();
+	private volatile boolean running = false;
+
+	private final AnimationTimer pulse = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			flush();
+		}
+	};
+
+	/**
+	 * Adds a kind of update. All kinds should be added before start() is
+	 * called.
+	 *
+	 * @param update
+	 *            what to run on the FX thread when the update is asked for
+	 * @return the kind to pass to request()
+	 */
+	public synchronized int add(Runnable update) {
+		updates.add(update);
+		pending.add(new AtomicBoolean(false));
+		updateArray = updates.toArray(new Runnable[updates.size()]);
+		pendingArray = pending.toArray(new AtomicBoolean[pending.size()]);
+		return updates.size() - 1;
+	}
+
+	/**
+	 * Asks for an update to run on the next pulse. Safe to call from any
+	 * thread; does nothing more if the update is already waiting.
+	 *
+	 * @param kind
+	 *            a kind from add()
+	 */
+	public void request(int kind) {
+		requested.incrementAndGet();
+		if (!pendingArray[kind].compareAndSet(false, true)) {
+			coalesced.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Starts flushing updates on every pulse.
+	 */
+	public void start() {
+		running = true;
+		if (Platform.isFxApplicationThread()) {
+			pulse.start();
+		} else {
+			Platform.runLater(new Runnable() {
+				@Override
+				public void run() {
+					if (running) {
+						pulse.start();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stops flushing. Updates asked for afterwards wait until the next start().
+	 */
+	public void stop() {
+		running = false;
+		if (Platform.isFxApplicationThread()) {
+			pulse.stop();
+		} else {
+			Platform.runLater(new Runnable() {
+				@Override
+				public void run() {
+					if (!running) {
+						pulse.stop();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs every update that is waiting, each at most once. Only call on the
+	 * FX thread.
+	 */
+	void flush() {
+		Runnable[] runs = updateArray;
+		AtomicBoolean[] flags = pendingArray;
+		for (int k = 0; k < flags.length; k++) {
+			// clear the flag first, so a request made while running is not lost
+			if (flags[k].getAndSet(false)) {
+				try {
+					runs[k].run();
+				} catch (RuntimeException e) {
+					System.err.println("Error: a UI update failed");
+					e.printStackTrace();
+				}
+				flushed.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of updates asked for
+	 */
+	public long getRequested() {
+		return requested.get();
+	}
+
+	/**
+	 * @return the number of requests merged into one that was already waiting
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * @return the number of updates actually run
+	 */
+	public long getFlushed() {
+		return flushed.get();
+	}
+
+}// end UiDispatcher
@@ -0,0 +1,100 @@
+package ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for ChangeLog.
+ *
+ * @version 1.0
+ */
+public class ChangeLogTest {
+
+	@TempDir
+	File dir;
+
+	/**
+	 * Writes every record it is played as a line of text.
+	 */
+	private static final class Recorder implements SpotChangeListener {
+		final List<String> records = new ArrayList<String>();
+
+		@Override
+		public void spotChanged(long sequence, long timestamp, int spot, boolean open) {
+			records.add((open ? "O " : "T ") + sequence + " " + timestamp + " " + spot);
+		}
+
+		@Override
+		public void keyframe(OccupancySnapshot snapshot) {
+			records.add("K " + snapshot.getSequence() + " " + snapshot.getTimestamp() + " " + snapshot.getOpen());
+		}
+	}
+
+	/**
+	 * Today at noon, so the records of a test never straddle two days.
+	 */
+	private static long noon() {
+		Calendar cal = Calendar.getInstance();
+		cal.set(Calendar.HOUR_OF_DAY, 12);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		return cal.getTimeInMillis();
+	}
+
+	@Test
+	public void flushWritesEverythingQueuedBeforeIt() throws IOException {
+		ChangeLog log = new ChangeLog(dir);
+		long noon = noon();
+		log.keyframe(OccupancySnapshot.of(1, noon, new boolean[] { true, true, true }));
+		for (int i = 0; i < 1000; i++) {
+			log.spotChanged(2 + i, noon + i, i % 3, i % 2 == 1);
+		}
+		log.flush();
+
+		File[] segments = log.getSegments();
+		assertEquals(1, segments.length);
+		Recorder r = new Recorder();
+		log.readSegment(segments[0], r);
+		assertEquals(1001, r.records.size());
+		assertEquals("K 1 " + noon + " 3", r.records.get(0));
+		assertEquals("T 2 " + noon + " 0", r.records.get(1));
+		assertEquals("O 1001 " + (noon + 999) + " 0", r.records.get(1000));
+		log.close();
+	}
+
+	@Test
+	public void closeStopsTheWriter() throws IOException, InterruptedException {
+		ChangeLog log = new ChangeLog(dir);
+		long now = noon();
+		log.keyframe(OccupancySnapshot.of(1, now, new boolean[] { true, false }));
+		log.spotChanged(2, now + 1, 1, true);
+		log.close();
+		// changes after the close go nowhere
+		log.spotChanged(3, now + 2, 0, false);
+		log.flush();
+		log.close();
+
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().equals("changelog-writer")) {
+				t.join(1000);
+				assertFalse(t.isAlive(), "the writer is still running");
+			}
+		}
+		Recorder r = new Recorder();
+		log.readSegment(log.getSegments()[0], r);
+		assertEquals(2, r.records.size());
+		assertTrue(r.records.get(1).startsWith("O 2 "));
+	}
+
+}// end ChangeLogTest
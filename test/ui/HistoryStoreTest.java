@@ -0,0 +1,96 @@
+package ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for HistoryStore.
+ *
+ * @version 1.0
+ */
+public class HistoryStoreTest {
+
+	@TempDir
+	File dir;
+
+	private static SpotBitSet spots(int numSpots, int... taken) {
+		SpotBitSet spots = new SpotBitSet(numSpots);
+		for (int k : taken) {
+			spots.set(k, true);
+		}
+		return spots;
+	}
+
+	@Test
+	public void storesDaysOlderThanTheFirstDay() throws IOException {
+		File file = new File(dir, "history.ocm");
+		HistoryStore store = new HistoryStore(file, 25, 28);
+		store.put(20000, 3, spots(25, 1, 2));
+		store.put(20001, 27, spots(25, 24));
+		// older than anything stored, and far enough back to need another chunk
+		store.put(19900, 0, spots(25, 5));
+		store.put(19999, 10, spots(25, 7, 8, 9));
+
+		assertEquals(19900, store.getFirstDay());
+		assertEquals(20001, store.getLastDay());
+		SpotBitSet read = new SpotBitSet(25);
+		assertTrue(store.read(20000, 3, read));
+		assertEquals(spots(25, 1, 2).getWord(0), read.getWord(0));
+		assertEquals(1, store.getCount(20001, 27));
+		assertEquals(1, store.getCount(19900, 0));
+		assertEquals(3, store.getCount(19999, 10));
+		// the records that were moved out of the way are empty again
+		assertFalse(store.has(19900, 3));
+		assertFalse(store.has(19901, 27));
+		assertFalse(store.has(20000, 4));
+		store.close();
+
+		store = new HistoryStore(file, 25, 28);
+		assertEquals(19900, store.getFirstDay());
+		assertTrue(store.read(20001, 27, read));
+		assertEquals(spots(25, 24).getWord(0), read.getWord(0));
+		assertEquals(3, store.getCount(19999, 10));
+		store.close();
+	}
+
+	@Test
+	public void finishesAMoveThatWasCutShort() throws IOException {
+		// ten days moved back three at a time take four batches; stop after each of the first three
+		for (int batches = 0; batches < 4; batches++) {
+			File file = new File(dir, "cut" + batches + ".ocm");
+			HistoryStore store = new HistoryStore(file, 25, 28);
+			for (int d = 100; d < 110; d++) {
+				store.put(d, 0, spots(25, d - 100));
+				store.put(d, 27, spots(25, 24));
+			}
+			assertFalse(store.prepend(97, batches));
+			store.close();
+			File journal = new File(file.getPath() + ".prepend");
+			assertTrue(journal.exists());
+
+			store = new HistoryStore(file, 25, 28);
+			assertFalse(journal.exists());
+			assertEquals(97, store.getFirstDay());
+			assertEquals(109, store.getLastDay());
+			SpotBitSet read = new SpotBitSet(25);
+			for (int d = 100; d < 110; d++) {
+				assertTrue(store.read(d, 0, read), "day " + d + " after " + batches + " batches");
+				assertEquals(spots(25, d - 100).getWord(0), read.getWord(0), "day " + d + " after " + batches + " batches");
+				assertEquals(1, store.getCount(d, 27));
+			}
+			for (int d = 97; d < 100; d++) {
+				assertFalse(store.has(d, 0));
+				assertFalse(store.has(d, 27));
+			}
+			store.close();
+		}
+	}
+
+}// end HistoryStoreTest
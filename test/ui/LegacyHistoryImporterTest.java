@@ -0,0 +1,190 @@
+package ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Tests for LegacyHistoryImporter, on history files written the way the old
+ * DOM based HistoryHandler wrote them.
+ *
+ * @version 1.0
+ */
+public class LegacyHistoryImporterTest {
+
+	@TempDir
+	File dir;
+
+	/**
+	 * Writes a history file the way the old commitWeekData did, with one day
+	 * per date (null for a day without a date attribute).
+	 */
+	private static void writeOldHistory(File file, String[] timeOfDay, GregorianCalendar[] dates, int[][][] spots)
+			throws Exception {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element rootElement = doc.createElement("lot");
+		doc.appendChild(rootElement);
+		for (int i = 0; i < dates.length; i++) {
+			Element day = doc.createElement("day");
+			rootElement.appendChild(day);
+			if (dates[i] != null) {
+				day.setAttribute("date", dates[i].get(Calendar.YEAR) + "-" + dates[i].get(Calendar.MONTH) + "-"
+						+ dates[i].get(Calendar.DAY_OF_MONTH));
+			}
+			for (int j = 0; j < timeOfDay.length; j++) {
+				Element spotmatrix = doc.createElement("spotmatrix");
+				day.appendChild(spotmatrix);
+				spotmatrix.setAttribute("time", timeOfDay[j]);
+				String str = "";
+				for (int k = 0; k < spots[i][j].length; k++) {
+					str = str + spots[i][j][k];
+				}
+				spotmatrix.appendChild(doc.createTextNode(str));
+			}
+		}
+		Transformer transformer = TransformerFactory.newInstance().newTransformer();
+		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+		transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+		transformer.transform(new DOMSource(doc), new StreamResult(file));
+	}
+
+	@Test
+	public void readsZeroBasedMonths() {
+		long april20 = HistoryStore.dayOf(new GregorianCalendar(2016, Calendar.APRIL, 20).getTimeInMillis());
+		assertEquals(april20, LegacyHistoryImporter.parseDay("2016-3-20"));
+		// written by the old appendCurrentTime, which used yyyy-MM-dd
+		assertEquals(april20, LegacyHistoryImporter.parseDay("2016-04-20"));
+		assertEquals(april20, LegacyHistoryImporter.parseDay(" 2016-3-20 "));
+		// February 30th, month 12 and garbage are not dates
+		assertEquals(-1, LegacyHistoryImporter.parseDay("2016-1-30"));
+		assertEquals(-1, LegacyHistoryImporter.parseDay("2016-12-1"));
+		assertEquals(-1, LegacyHistoryImporter.parseDay("yesterday"));
+		assertEquals(-1, LegacyHistoryImporter.parseDay(null));
+	}
+
+	@Test
+	public void importsOldHistoryNextToLiveData() throws Exception {
+		HistoryHandler history = new HistoryHandler(dir);
+		int numSpots = history.numSpots;
+		int slots = history.timeIncr;
+
+		// live data from today, which is newer than anything in the file
+		GregorianCalendar today = new GregorianCalendar();
+		SpotBitSet[] live = history.makeRandSpots2();
+		history.appendDay(live, today);
+
+		// a week of old history, out of order, with a day that lost its date
+		GregorianCalendar[] dates = { new GregorianCalendar(2016, 3, 22), new GregorianCalendar(2016, 3, 20), null,
+				new GregorianCalendar(2016, 3, 26), new GregorianCalendar(2016, 3, 21) };
+		int[][][] spots = new int[dates.length][slots][numSpots];
+		Random random = new Random(7);
+		for (int i = 0; i < dates.length; i++) {
+			for (int j = 0; j < slots; j++) {
+				for (int k = 0; k < numSpots; k++) {
+					spots[i][j][k] = random.nextInt(2);
+				}
+			}
+		}
+		File xml = new File(dir, "old_history.xml");
+		writeOldHistory(xml, history.timeOfDay, dates, spots);
+
+		LegacyHistoryImporter importer = new LegacyHistoryImporter(history.timeOfDay, numSpots);
+		assertEquals(4 * slots, history.importXml(xml));
+		assertEquals(4 * slots, importer.importFile(xml, new LegacyHistoryImporter.Sink() {
+			@Override
+			public void accept(long day, int slot, SpotBitSet s) {
+			}
+		}));
+		assertEquals(1, importer.getSkippedDays());
+		assertEquals(slots, importer.getSkippedRecords());
+
+		SpotBitSet read = new SpotBitSet(numSpots);
+		for (int i = 0; i < dates.length; i++) {
+			if (dates[i] == null) {
+				continue;
+			}
+			long day = HistoryStore.dayOf(dates[i].getTimeInMillis());
+			for (int j = 0; j < slots; j++) {
+				assertTrue(history.store.read(day, j, read));
+				for (int k = 0; k < numSpots; k++) {
+					assertEquals(spots[i][j][k] == 1, read.get(k), "day " + i + " slot " + j + " spot " + k);
+				}
+			}
+		}
+		// the days in between that the file doesn't have stay empty
+		assertFalse(history.store.has(HistoryStore.dayOf(new GregorianCalendar(2016, 3, 23).getTimeInMillis()), 0));
+		// and the live data is still there
+		long todayDay = HistoryStore.dayOf(today.getTimeInMillis());
+		for (int j = 0; j < slots; j++) {
+			assertTrue(history.store.read(todayDay, j, read));
+			assertEquals(live[j].getWord(0), read.getWord(0));
+		}
+		history.close();
+	}
+
+	@Test
+	public void exportReadsBackThroughImport() throws Exception {
+		// the AM/PM markers of a non-English locale must not end up in the file
+		Locale locale = Locale.getDefault();
+		Locale.setDefault(Locale.GERMANY);
+		try {
+			HistoryHandler history = new HistoryHandler(new File(dir, "a"));
+			int slots = history.timeIncr;
+			GregorianCalendar[] dates = { new GregorianCalendar(2016, 3, 20), new GregorianCalendar(2016, 3, 21),
+					new GregorianCalendar(2016, 3, 23) };
+			SpotBitSet[][] days = new SpotBitSet[dates.length][];
+			for (int i = 0; i < dates.length; i++) {
+				days[i] = history.makeRandSpots2();
+				history.appendDay(days[i], dates[i]);
+			}
+			File xml = new File(dir, "exported.xml");
+			history.exportXml(xml);
+			history.close();
+
+			// every day from the first to the last, each with every time slot
+			String text = new String(Files.readAllBytes(xml.toPath()), StandardCharsets.UTF_8);
+			assertTrue(text.contains("<day date=\"2016-3-20\">"));
+			assertTrue(text.contains("<spotmatrix time=\"9:00 PM\">"));
+			assertEquals(4 * slots, text.split("<spotmatrix").length - 1);
+
+			HistoryHandler copy = new HistoryHandler(new File(dir, "b"));
+			assertEquals(4 * slots, copy.importXml(xml));
+			SpotBitSet read = new SpotBitSet(copy.numSpots);
+			for (int i = 0; i < dates.length; i++) {
+				long day = HistoryStore.dayOf(dates[i].getTimeInMillis());
+				for (int j = 0; j < slots; j++) {
+					assertTrue(copy.store.read(day, j, read));
+					assertEquals(days[i][j].getWord(0), read.getWord(0), "day " + i + " slot " + j);
+				}
+			}
+			// the day the history skipped comes back as an empty lot
+			long skipped = HistoryStore.dayOf(new GregorianCalendar(2016, 3, 22).getTimeInMillis());
+			assertTrue(copy.store.read(skipped, 0, read));
+			assertEquals(0, read.cardinality());
+			copy.close();
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+}// end LegacyHistoryImporterTest
@@ -0,0 +1,254 @@
+package ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacpp.avformat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests for MultiCameraIngestion, with a local MJPEG server and a local file
+ * standing in for the cameras.
+ *
+ * @version 1.0
+ */
+public class MultiCameraIngestionTest {
+
+	private static final int[][] QUADS = { { 100, 100, 100, 200, 200, 200, 200, 100 },
+			{ 400, 100, 400, 200, 500, 200, 500, 100 } };
+	private static final String BOUNDARY = "frame";
+
+	@TempDir
+	File dir;
+
+	private HttpServer server;
+	private ExecutorService streams;
+	private MultiCameraIngestion ingestion;
+	// the JPEG every camera path is streaming right now
+	private final Map<String, byte[]> showing = new ConcurrentHashMap<String, byte[]>();
+
+	@BeforeAll
+	public static void needsFfmpeg() {
+		boolean loaded;
+		try {
+			Loader.load(avformat.class);
+			loaded = true;
+		} catch (Throwable t) {
+			loaded = false;
+		}
+		assumeTrue(loaded, "the ffmpeg natives don't load on this machine");
+	}
+
+	@AfterEach
+	public void stopEverything() {
+		// the cameras go first, so their grabs end while the streams still run
+		if (ingestion != null) {
+			ingestion.stop();
+		}
+		if (server != null) {
+			server.stop(0);
+			streams.shutdownNow();
+		}
+	}
+
+	/**
+	 * An empty lot, or one with a car (a dark block) in the first spot.
+	 */
+	private static byte[] lot(boolean car) throws IOException {
+		BufferedImage img = new BufferedImage(FrameCapture.FEED_WIDTH, FrameCapture.FEED_HEIGHT,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = img.createGraphics();
+		g.setColor(Color.GRAY);
+		g.fillRect(0, 0, img.getWidth(), img.getHeight());
+		if (car) {
+			g.setColor(Color.BLACK);
+			g.fillRect(100, 100, 100, 100);
+		}
+		g.dispose();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(img, "jpg", out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Serves every path in showing as an endless multipart/x-mixed-replace
+	 * stream at about 25 frames a second, like an IP camera.
+	 */
+	private String startMjpegServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		streams = Executors.newCachedThreadPool();
+		server.setExecutor(streams);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String path = exchange.getRequestURI().getPath();
+				exchange.getResponseHeaders().set("Content-Type", "multipart/x-mixed-replace;boundary=" + BOUNDARY);
+				exchange.sendResponseHeaders(200, 0);
+				OutputStream out = exchange.getResponseBody();
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						byte[] jpeg = showing.get(path);
+						out.write(("--" + BOUNDARY + "\r\nContent-Type: image/jpeg\r\nContent-Length: " + jpeg.length
+								+ "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+						out.write(jpeg);
+						out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+						out.flush();
+						Thread.sleep(40);
+					}
+				} catch (IOException e) {
+					// the camera hung up
+				} catch (InterruptedException e) {
+					// the server is stopping
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	private static void waitFor(OccupancyRegistry registry, String id, boolean firstOpen, long timeoutMillis)
+			throws InterruptedException {
+		long end = System.currentTimeMillis() + timeoutMillis;
+		while (System.currentTimeMillis() < end) {
+			OccupancySnapshot s = registry.get(id);
+			if (s != null && s.isOpen(0) == firstOpen) {
+				return;
+			}
+			Thread.sleep(50);
+		}
+	}
+
+	@Test
+	public void readsEveryStreamAndAnalysesOnTheSharedPool() throws IOException, InterruptedException {
+		showing.put("/a", lot(false));
+		showing.put("/b", lot(false));
+		String base = startMjpegServer();
+		OccupancyRegistry registry = new OccupancyRegistry();
+		ingestion = new MultiCameraIngestion(Arrays.asList(new CameraSource("a", base + "/a", QUADS, 20),
+				new CameraSource("b", base + "/b", QUADS, 20)), registry, 1);
+		ingestion.start();
+
+		// once the empty lot has been learned, every spot is open
+		waitFor(registry, "a", true, 20000);
+		waitFor(registry, "b", true, 20000);
+		assertNotNull(registry.get("a"), "camera a was never analysed");
+		assertNotNull(registry.get("b"), "camera b was never analysed");
+		assertEquals(2, registry.get("a").getNumSpots());
+		assertEquals(2, registry.get("b").getOpen());
+
+		showing.put("/a", lot(true));
+		waitFor(registry, "a", false, 20000);
+		assertFalse(registry.get("a").isOpen(0), "the car in camera a was never seen");
+		assertTrue(registry.get("a").isOpen(1));
+		assertEquals(2, registry.get("b").getOpen());
+	}
+
+	/**
+	 * Writes a .mjpeg file, which is just JPEGs back to back.
+	 */
+	private File mjpegFile(int frames) throws IOException {
+		File video = new File(dir, "lot.mjpeg");
+		byte[] empty = lot(false);
+		OutputStream out = new FileOutputStream(video);
+		try {
+			for (int i = 0; i < frames; i++) {
+				out.write(empty);
+			}
+		} finally {
+			out.close();
+		}
+		return video;
+	}
+
+	@Test
+	public void grabsOnVirtualThreads() throws IOException, InterruptedException {
+		File video = mjpegFile(5);
+		List<CameraSource> sources = new ArrayList<CameraSource>();
+		for (int i = 0; i < 100; i++) {
+			sources.add(new CameraSource("cam" + i, video.getAbsolutePath(), QUADS, 1));
+		}
+		int before = ManagementFactory.getThreadMXBean().getThreadCount();
+		ingestion = new MultiCameraIngestion(sources, new OccupancyRegistry(), 2);
+		ingestion.start();
+
+		// wait until every camera is grabbing
+		long end = System.currentTimeMillis() + 60000;
+		for (FrameCapture capture : ingestion.getCaptures()) {
+			while (capture.getMailbox().getFramesGrabbed() == 0 && System.currentTimeMillis() < end) {
+				Thread.sleep(20);
+			}
+			assertTrue(capture.getMailbox().getFramesGrabbed() > 0, "a camera never grabbed a frame");
+		}
+
+		// the thread count only covers platform threads: the analysis pool and the carriers
+		int added = ManagementFactory.getThreadMXBean().getThreadCount() - before;
+		assertTrue(added < sources.size() / 4, added + " platform threads for " + sources.size() + " cameras");
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			assertFalse(t.getName().startsWith("grab-"), t.getName() + " is a platform thread");
+		}
+	}
+
+	@Test
+	public void readsAFileWithoutWaitingForTheAnalysis() throws IOException, InterruptedException {
+		File video = mjpegFile(30);
+
+		OccupancyRegistry registry = new OccupancyRegistry();
+		ingestion = new MultiCameraIngestion(
+				Arrays.asList(new CameraSource("file", video.getAbsolutePath(), QUADS, 1)), registry, 1);
+		ingestion.start();
+		List<FrameCapture> captures = ingestion.getCaptures();
+		assertEquals(1, captures.size());
+		FrameMailbox mailbox = captures.get(0).getMailbox();
+		long end = System.currentTimeMillis() + 20000;
+		while (mailbox.getFramesGrabbed() < 30 && System.currentTimeMillis() < end) {
+			Thread.sleep(50);
+		}
+
+		// the grab thread read the whole file, while the analysis only ever took the newest frame
+		assertEquals(30, mailbox.getFramesGrabbed());
+		assertTrue(mailbox.getFramesConsumed() < 30, mailbox.getFramesConsumed() + " frames were analysed");
+		assertTrue(mailbox.getFramesDropped() > 0);
+
+		// only the box around the spots was copied out of each frame
+		FrameCapture capture = captures.get(0);
+		long frameBytes = 4L * FrameCapture.FEED_WIDTH * FrameCapture.FEED_HEIGHT;
+		assertTrue(capture.getBytesCopiedPerFrame() < frameBytes / 4);
+		assertEquals(frameBytes, capture.getBytesCopiedPerFrame() + capture.getBytesSavedPerFrame());
+		assertTrue(Metrics.values().get("camera.copy.bytes_saved").longValue() >= 30 * capture.getBytesSavedPerFrame());
+	}
+
+}// end MultiCameraIngestionTest
@@ -0,0 +1,57 @@
+package ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.GregorianCalendar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for OccupancyEngine and the history it samples into.
+ *
+ * @version 1.0
+ */
+public class OccupancyEngineTest {
+
+	@TempDir
+	File dir;
+
+	@Test
+	public void historyKeepsEverySpotOfTheLot() {
+		int lotSpots = SpotLayout.getSpotQuads().length;
+		HistoryHandler history = new HistoryHandler(dir);
+		assertEquals(lotSpots, history.numSpots);
+
+		// the last spots of the lot are the ones that used to be cut off
+		SpotBitSet[] day = new SpotBitSet[history.timeIncr];
+		for (int j = 0; j < day.length; j++) {
+			day[j] = new SpotBitSet(lotSpots);
+			day[j].set(lotSpots - 1, true);
+		}
+		GregorianCalendar today = new GregorianCalendar();
+		history.appendDay(day, today);
+		SpotBitSet[] read = history.getDaysAgoRaw(0);
+		assertTrue(read[0].get(lotSpots - 1));
+		assertEquals(1, read[0].cardinality());
+		history.close();
+	}
+
+	@Test
+	public void detectionRefusesALotTheHistoryDoesNotFit() {
+		HistoryHandler history = new HistoryHandler(dir, 25);
+		final OccupancyEngine engine = new OccupancyEngine(null, history);
+		assertThrows(IllegalArgumentException.class, new Executable() {
+			@Override
+			public void execute() {
+				engine.detectWith(SpotLayout.getSpotQuads());
+			}
+		});
+		history.close();
+	}
+
+}// end OccupancyEngineTest
@@ -0,0 +1,121 @@
+package ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for OccupancyServer, with the spot states pushed into an engine the
+ * way MATLAB pushes them.
+ *
+ * @version 1.0
+ */
+public class OccupancyServerTest {
+
+	@TempDir
+	File dir;
+
+	private HistoryHandler history;
+	private OccupancyEngine engine;
+	private OccupancyServer server;
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		history = new HistoryHandler(dir);
+		engine = new OccupancyEngine(null, history);
+		engine.publishSpots(new boolean[] { true, false, true, true });
+		server = new OccupancyServer(engine, 0);
+		server.start();
+	}
+
+	@AfterEach
+	public void stopServer() {
+		server.stop();
+		history.close();
+	}
+
+	private HttpURLConnection open(String method, String path) throws IOException {
+		HttpURLConnection c = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path)
+				.openConnection();
+		c.setRequestMethod(method);
+		c.setConnectTimeout(5000);
+		c.setReadTimeout(5000);
+		return c;
+	}
+
+	@Test
+	public void servesEveryDayTheChartsAskFor() throws IOException {
+		for (int daysAgo = 0; daysAgo <= history.histL; daysAgo++) {
+			assertEquals(200, open("GET", "/history?daysAgo=" + daysAgo).getResponseCode(), "daysAgo=" + daysAgo);
+		}
+		assertEquals(400, open("GET", "/history?daysAgo=" + (history.histL + 1)).getResponseCode());
+		assertEquals(400, open("GET", "/history?daysAgo=-1").getResponseCode());
+	}
+
+	@Test
+	public void etagsDifferBetweenRuns() throws IOException, InterruptedException {
+		String first = open("GET", "/spots").getHeaderField("ETag");
+		assertNotNull(first);
+		HttpURLConnection again = open("GET", "/spots");
+		again.setRequestProperty("If-None-Match", first);
+		assertEquals(304, again.getResponseCode());
+
+		// a restarted server starts counting snapshots from the same place
+		server.stop();
+		Thread.sleep(5);
+		engine = new OccupancyEngine(null, history);
+		engine.publishSpots(new boolean[] { true, false, true, true });
+		server = new OccupancyServer(engine, 0);
+		server.start();
+		HttpURLConnection restarted = open("GET", "/spots");
+		restarted.setRequestProperty("If-None-Match", first);
+		assertEquals(200, restarted.getResponseCode());
+		assertNotEquals(first, restarted.getHeaderField("ETag"));
+	}
+
+	@Test
+	public void headOnEventsDoesNotSubscribe() throws IOException {
+		HttpURLConnection c = open("HEAD", "/events");
+		assertEquals(200, c.getResponseCode());
+		assertTrue(c.getContentType().startsWith("text/event-stream"));
+		assertEquals(0, server.getSubscriberCount());
+	}
+
+	@Test
+	public void streamsTheLotThenItsChanges() throws IOException {
+		HttpURLConnection c = open("GET", "/events");
+		BufferedReader in = new BufferedReader(new InputStreamReader(c.getInputStream(), StandardCharsets.UTF_8));
+		assertEquals("event: snapshot", readEvent(in));
+		engine.publishSpots(new boolean[] { true, true, true, true });
+		assertEquals("event: changes", readEvent(in));
+		c.disconnect();
+	}
+
+	/**
+	 * @return the event line of the next event, skipping heartbeats
+	 */
+	private static String readEvent(BufferedReader in) throws IOException {
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.startsWith("event: ")) {
+				return line;
+			}
+		}
+		return null;
+	}
+
+}// end OccupancyServerTest
@@ -0,0 +1,52 @@
+package ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for PeriodicTask.
+ *
+ * @version 1.0
+ */
+public class PeriodicTaskTest {
+
+	@Test
+	public void cancelDuringARunStopsTheTask() throws InterruptedException {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		final PeriodicTask[] task = new PeriodicTask[1];
+		task[0] = new PeriodicTask("test.cancel", new Runnable() {
+			@Override
+			public void run() {
+				task[0].cancel();
+			}
+		}, 1000);
+		task[0].start(scheduler, 0);
+		Thread.sleep(100);
+		assertEquals(1, task[0].getRuns());
+		scheduler.shutdown();
+		assertTrue(scheduler.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void shutdownDuringARunStopsTheTask() throws InterruptedException {
+		final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		PeriodicTask task = new PeriodicTask("test.shutdown", new Runnable() {
+			@Override
+			public void run() {
+				scheduler.shutdown();
+			}
+		}, 1000);
+		task.start(scheduler, 0);
+		assertTrue(scheduler.awaitTermination(1, TimeUnit.SECONDS));
+		assertEquals(1, task.getRuns());
+		// nothing is left to cancel, but it mustn't fail either
+		task.cancel();
+	}
+
+}// end PeriodicTaskTest
@@ -0,0 +1,104 @@
+package ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for SharedSpotReader, against a SharedSpotWriter in the same process.
+ *
+ * @version 1.0
+ */
+public class SharedSpotReaderTest {
+
+	@TempDir
+	File dir;
+
+	@Test
+	public void readsEachWriteOnce() throws IOException {
+		File file = new File(dir, "spots.shm");
+		SharedSpotReader reader = new SharedSpotReader(file);
+		assertFalse(reader.poll());
+
+		SharedSpotWriter writer = new SharedSpotWriter(file, 100);
+		SpotBitSet spots = new SpotBitSet(100);
+		spots.set(3, true);
+		spots.set(99, true);
+		writer.write(spots, 1234);
+		assertTrue(reader.poll());
+		assertEquals(2, reader.getSpots().cardinality());
+		assertTrue(reader.getSpots().get(99));
+		assertEquals(1234, reader.getTimestamp());
+		assertFalse(reader.poll());
+		writer.close();
+		reader.close();
+	}
+
+	@Test
+	public void waitsForTheFirstWrite() throws IOException {
+		File file = new File(dir, "spots.shm");
+		SharedSpotWriter writer = new SharedSpotWriter(file, 28);
+		SharedSpotReader reader = new SharedSpotReader(file);
+		// the header is there but no states yet, which must not read as a full lot
+		assertFalse(reader.poll());
+		assertEquals(0, reader.getSequence());
+
+		SpotBitSet spots = new SpotBitSet(28);
+		spots.set(7, true);
+		writer.write(spots, 99);
+		assertTrue(reader.poll());
+		assertEquals(1, reader.getSpots().cardinality());
+		writer.close();
+
+		// a writer for another lot starts its sequence over, again with nothing written
+		writer = new SharedSpotWriter(file, 200);
+		assertFalse(reader.poll());
+		writer.write(new SpotBitSet(200), 100);
+		assertTrue(reader.poll());
+		assertEquals(200, reader.getSpots().size());
+		writer.close();
+		reader.close();
+	}
+
+	@Test
+	public void followsAWriterThatStartsOver() throws IOException {
+		File file = new File(dir, "spots.shm");
+		SharedSpotWriter writer = new SharedSpotWriter(file, 28);
+		SpotBitSet spots = new SpotBitSet(28);
+		for (int i = 0; i < 5; i++) {
+			spots.set(i, true);
+			writer.write(spots, i);
+		}
+		SharedSpotReader reader = new SharedSpotReader(file);
+		assertTrue(reader.poll());
+		assertEquals(5, reader.getSpots().cardinality());
+		writer.close();
+
+		// the same lot again: the sequence carries on
+		writer = new SharedSpotWriter(file, 28);
+		spots.set(10, true);
+		writer.write(spots, 10);
+		assertTrue(reader.poll());
+		assertEquals(6, reader.getSpots().cardinality());
+		writer.close();
+
+		// a bigger lot in a file that grows, with the sequence starting over
+		writer = new SharedSpotWriter(file, 200);
+		SpotBitSet big = new SpotBitSet(200);
+		big.set(150, true);
+		writer.write(big, 20);
+		assertTrue(reader.poll());
+		assertEquals(200, reader.getSpots().size());
+		assertTrue(reader.getSpots().get(150));
+		assertEquals(1, reader.getSpots().cardinality());
+		writer.close();
+		reader.close();
+	}
+
+}// end SharedSpotReaderTest